@@ -0,0 +1,41 @@
+package com.bovbel.marsrover;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD containment kernel, compares a full vector of left and right bounds per step and
+ * packs the lane masks into the block match mask. Scalar loop handles the block tail.
+ *
+ * Requires the incubator module (--add-modules jdk.incubator.vector), so it is kept in its own
+ * source folder, compiled only where the module is present. Only ever loaded reflectively by
+ * {@link BlockedChunkIndex}, so that the rest of the project builds and runs without it
+ *
+ */
+final class VectorContainmentKernel implements ContainmentKernel {
+
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+	@Override
+	public long match(long[] left, long[] right, int from, int length, long value) {
+		long mask = 0;
+		int i = 0;
+		int bound = SPECIES.loopBound(length);
+		for(; i < bound; i += SPECIES.length()){
+			LongVector lefts = LongVector.fromArray(SPECIES, left, from + i);
+			LongVector rights = LongVector.fromArray(SPECIES, right, from + i);
+			VectorMask<Long> contained = lefts.compare(VectorOperators.LE, value)
+					.and(rights.compare(VectorOperators.GT, value));
+			mask |= contained.toLong() << i;
+		}
+		for(; i < length; i++){
+			if(left[from + i] <= value & right[from + i] > value){
+				mask |= 1L << i;
+			}
+		}
+		return mask;
+	}
+
+}
@@ -0,0 +1,285 @@
+package com.bovbel.marsrover;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Blocked interval index, for lookup of chunks containing any byte index on dense, heavily
+ * overlapping inputs where each query matches a large fraction of chunks
+ *
+ * Chunks are sorted by left bound and packed into fixed size blocks of contiguous left/right
+ * arrays. A query only visits blocks up to the last chunk starting at or before the value, skips
+ * blocks whose largest right bound is at or before the value, and tests containment a whole block
+ * at a time, emitting one match mask per block into a reusable per-thread buffer.
+ *
+ * Containment is tested with the SIMD kernel when jdk.incubator.vector is available and the kernel
+ * was built from src-vector, otherwise with a scalar loop. Set the marsrover.scalar system property to
+ * force the scalar kernel.
+ *
+ * Each chunk's rank in size order is precomputed, so matches are put in size order without comparing
+ * chunks: dense matches are marked in a per-thread bitmap of ranks and read back in rank order, sparse
+ * matches are sorted as primitive ranks.
+ *
+ * Construction is O(n log(n)) for sorting, query is O(log(n) + n/64) block tests + O(min(k log(k), n/64 + k))
+ * for ordering k matches
+ *
+ */
+public class BlockedChunkIndex implements ChunkIndex {
+
+	//number of chunks per block, one bit per chunk in match mask
+	static final int BLOCK_SIZE = 64;
+
+	//matches are ordered through the rank bitmap when at least 1/RANK_BITMAP_RATIO of chunks match
+	private static final int RANK_BITMAP_RATIO = 512;
+
+	private final Chunk[] chunks, bySize;
+	private final long[] left, right;
+	private final long[] blockMaxRight;
+	//size order rank of each chunk, in left bound order
+	private final int[] sizeRank;
+	private final ContainmentKernel kernel;
+
+	//reusable match mask and rank bitmap buffers, one per querying thread
+	private final ThreadLocal<long[]> maskBuffer, rankBuffer;
+
+	/**
+	 * Build index from chunks
+	 * @param chunks
+	 */
+	public BlockedChunkIndex(Set<Chunk> chunks){
+
+		this.chunks = chunks.toArray(new Chunk[chunks.size()]);
+		Arrays.sort(this.chunks, Chunk.getLeftComparator());
+
+		left = new long[this.chunks.length];
+		right = new long[this.chunks.length];
+		for(int i = 0; i < this.chunks.length; i++){
+			left[i] = this.chunks[i].left;
+			right[i] = this.chunks[i].right;
+		}
+
+		//record largest right bound in each block, to skip blocks that end before a query
+		final int numBlocks = (this.chunks.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		blockMaxRight = new long[numBlocks];
+		for(int block = 0; block < numBlocks; block++){
+			long max = Long.MIN_VALUE;
+			for(int i = block * BLOCK_SIZE; i < Math.min((block + 1) * BLOCK_SIZE, right.length); i++){
+				max = Math.max(max, right[i]);
+			}
+			blockMaxRight[block] = max;
+		}
+
+		//rank chunks by size, ties in left bound order as a stable sort of matches would leave them
+		Integer[] order = new Integer[this.chunks.length];
+		for(int i = 0; i < order.length; i++){
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>(){
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(right[a] - left[a], right[b] - left[b]);
+			}
+		});
+		bySize = new Chunk[this.chunks.length];
+		sizeRank = new int[this.chunks.length];
+		for(int rank = 0; rank < order.length; rank++){
+			bySize[rank] = this.chunks[order[rank]];
+			sizeRank[order[rank]] = rank;
+		}
+
+		kernel = selectKernel();
+		maskBuffer = new ThreadLocal<long[]>(){
+			@Override
+			protected long[] initialValue(){
+				return new long[numBlocks];
+			}
+		};
+		rankBuffer = new ThreadLocal<long[]>(){
+			@Override
+			protected long[] initialValue(){
+				return new long[numBlocks];
+			}
+		};
+	}
+
+	/**
+	 * Get number of chunks in index
+	 * @return
+	 */
+	public int size(){
+		return chunks.length;
+	}
+
+	@Override
+	public List<Chunk> getChunksContainingValue(long value) {
+
+		if(chunks.length == 0){
+			return null;
+		}
+
+		//only chunks starting at or before value can contain it
+		int end = upperBound(left, value);
+		int lastBlock = (end + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+		//test containment block by block, storing match masks
+		long[] masks = maskBuffer.get();
+		int matches = 0;
+		for(int block = 0; block < lastBlock; block++){
+			if(blockMaxRight[block] <= value){
+				masks[block] = 0;
+			}else{
+				int from = block * BLOCK_SIZE;
+				masks[block] = kernel.match(left, right, from, Math.min(BLOCK_SIZE, end - from), value);
+				matches += Long.bitCount(masks[block]);
+			}
+		}
+
+		//decode masks into ranks of matching chunks
+		int[] ranks = new int[matches];
+		int count = 0;
+		for(int block = 0; block < lastBlock; block++){
+			long mask = masks[block];
+			while(mask != 0){
+				ranks[count++] = sizeRank[block * BLOCK_SIZE + Long.numberOfTrailingZeros(mask)];
+				mask &= mask - 1;
+			}
+		}
+		return inSizeOrder(ranks, count);
+	}
+
+	/**
+	 * Get lists of chunks containing each of a sorted batch of values in one sweep over the blocks,
+	 * testing each block only against the values between its smallest left and largest right bound
+	 * @param values
+	 * @return
+	 */
+	@Override
+	public List<List<Chunk>> getChunksContainingValues(long[] values) {
+
+		if(chunks.length == 0){
+			return null;
+		}
+
+		//ranks of matching chunks for each value
+		int[][] ranks = new int[values.length][];
+		int[] counts = new int[values.length];
+
+		//blocks are sorted by smallest left bound, so first candidate value only moves forward
+		int first = 0;
+		for(int block = 0; block < blockMaxRight.length && first < values.length; block++){
+			int from = block * BLOCK_SIZE;
+			int length = Math.min(BLOCK_SIZE, chunks.length - from);
+			while(first < values.length && values[first] < left[from]){
+				first++;
+			}
+			for(int i = first; i < values.length && values[i] < blockMaxRight[block]; i++){
+				long mask = kernel.match(left, right, from, length, values[i]);
+				if(mask == 0){
+					continue;
+				}
+				int needed = counts[i] + Long.bitCount(mask);
+				if(ranks[i] == null || needed > ranks[i].length){
+					ranks[i] = Arrays.copyOf(ranks[i] == null ? new int[0] : ranks[i], Math.max(needed, 2 * counts[i]));
+				}
+				while(mask != 0){
+					ranks[i][counts[i]++] = sizeRank[from + Long.numberOfTrailingZeros(mask)];
+					mask &= mask - 1;
+				}
+			}
+		}
+
+		List<List<Chunk>> output = new ArrayList<>(values.length);
+		for(int i = 0; i < values.length; i++){
+			output.add(counts[i] == 0 ? new ArrayList<Chunk>() : inSizeOrder(ranks[i], counts[i]));
+		}
+		return output;
+	}
+
+	/**
+	 * Get chunks of ranks in size order, through rank bitmap if dense, otherwise by sorting ranks
+	 * @param ranks size ranks of matching chunks, reordered by call
+	 * @param count number of ranks
+	 * @return
+	 */
+	private List<Chunk> inSizeOrder(int[] ranks, int count){
+
+		List<Chunk> output = new ArrayList<>(count);
+		if((long) count * RANK_BITMAP_RATIO < chunks.length){
+			Arrays.sort(ranks, 0, count);
+			for(int i = 0; i < count; i++){
+				output.add(bySize[ranks[i]]);
+			}
+			return output;
+		}
+
+		long[] bitmap = rankBuffer.get();
+		Arrays.fill(bitmap, 0);
+		for(int i = 0; i < count; i++){
+			bitmap[ranks[i] >>> 6] |= 1L << ranks[i];
+		}
+		for(int word = 0; word < bitmap.length; word++){
+			long bits = bitmap[word];
+			while(bits != 0){
+				output.add(bySize[(word << 6) + Long.numberOfTrailingZeros(bits)]);
+				bits &= bits - 1;
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * Find number of sorted values less than or equal to key
+	 * @param sorted
+	 * @param key
+	 * @return
+	 */
+	private static int upperBound(long[] sorted, long key){
+		int low = 0, high = sorted.length;
+		while(low < high){
+			int mid = (low + high) >>> 1;
+			if(sorted[mid] <= key){
+				low = mid + 1;
+			}else{
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Load SIMD kernel if vector API is available, otherwise fall back to scalar kernel
+	 * @return
+	 */
+	private static ContainmentKernel selectKernel(){
+		if(!Boolean.getBoolean("marsrover.scalar")){
+			try {
+				return (ContainmentKernel) Class.forName("com.bovbel.marsrover.VectorContainmentKernel").getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				//vector module not present, use scalar kernel
+			}
+		}
+		return new ScalarContainmentKernel();
+	}
+
+	/**
+	 * Branch free scalar containment kernel
+	 *
+	 */
+	private static class ScalarContainmentKernel implements ContainmentKernel {
+
+		@Override
+		public long match(long[] left, long[] right, int from, int length, long value) {
+			long mask = 0;
+			for(int i = 0; i < length; i++){
+				long contained = (left[from + i] <= value & right[from + i] > value) ? 1L : 0L;
+				mask |= contained << i;
+			}
+			return mask;
+		}
+
+	}
+
+}
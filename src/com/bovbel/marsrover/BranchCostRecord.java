@@ -47,7 +47,7 @@ public class BranchCostRecord {
 	 * @param cost
 	 * @return
 	 */
-	private boolean isViable(long position, double cost){
+	public boolean isViable(long position, double cost){
 		
 		//obtain shared lock to read, prevent writing to records
 		rwLock.readLock().lock();
@@ -0,0 +1,329 @@
+package com.bovbel.marsrover;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Problem processor for request budget constrained problems, finds lowest cost solution using at most
+ * a maximum number of chunks, along with the best cost achievable for every smaller budget.
+ *
+ * Layered dynamic program over the distinct chunk right bounds p (clamped to image size), where layer r
+ * holds the lowest cost of covering [0, p) with at most r chunks. A chunk [left, right) extends any cover
+ * reaching left or beyond, so each layer is built from suffix minimums of the previous layer, and all
+ * positions in a layer are independent and computed in parallel.
+ *
+ * Each layer is O(n + p) after O(n log(n)) setup, for O(R (n + p)) overall. Solution reconstruction
+ * keeps one chunk and one origin position per layer and position, O(R p) memory. Layers stop being
+ * computed once one no longer improves any position, since no later layer can either.
+ *
+ */
+public class BudgetProblemProcessor {
+
+	//number of chunks below which a layer task stops splitting
+	private static final int SEQUENTIAL_THRESHOLD = 1024;
+
+	private final ForkJoinPool pool;
+	private final Chunk[] chunks;
+	private final double[] costs;
+	private final long[] positions;
+	private final int[] chunkSource, targetStart;
+
+	//best cost per layer and position, and chunk and origin position used to reach it (-1 if carried from previous layer)
+	private final double[][] layerCosts;
+	private final int[][] layerChunk, layerOrigin;
+	private final double[] costByBudget;
+
+	/**
+	 * Initialize problem by cataloguing chunks offered by default link, and solve for every budget up to
+	 * maxChunks, using {@link ProblemProcessorParallel#getDefaultParallelism()} threads
+	 * @param numBytes
+	 * @param chunks
+	 * @param maxChunks
+	 */
+	public BudgetProblemProcessor(long numBytes, Set<Chunk> chunks, int maxChunks){
+		this(numBytes, new ChunkCatalogue(Chunk.latency, Chunk.bandwidth, chunks), maxChunks);
+	}
+
+	/**
+	 * Initialize multi source problem, using cheapest source for each chunk, and solve for every budget up to
+	 * maxChunks, using {@link ProblemProcessorParallel#getDefaultParallelism()} threads
+	 * @param numBytes
+	 * @param catalogue
+	 * @param maxChunks
+	 */
+	public BudgetProblemProcessor(long numBytes, ChunkCatalogue catalogue, int maxChunks){
+		this(numBytes, catalogue, maxChunks, ProblemProcessorParallel.getDefaultParallelism());
+	}
+
+	/**
+	 * Initialize multi source problem, using cheapest source for each chunk, and solve for every budget up to
+	 * maxChunks with a given number of threads, on a pool that is shut down once solved
+	 * @param numBytes
+	 * @param catalogue
+	 * @param maxChunks
+	 * @param parallelism
+	 */
+	public BudgetProblemProcessor(long numBytes, ChunkCatalogue catalogue, int maxChunks, int parallelism){
+		this(numBytes, catalogue.getCheapestChunks(), catalogue, maxChunks, new ForkJoinPool(parallelism), true);
+	}
+
+	/**
+	 * Initialize problem and solve for every budget up to maxChunks, using the provided pool
+	 * @param numBytes
+	 * @param chunks
+	 * @param catalogue catalogue chunks were added to, providing their precomputed costs
+	 * @param maxChunks
+	 * @param pool
+	 * @throws IllegalArgumentException if maxChunks is negative
+	 */
+	public BudgetProblemProcessor(long numBytes, Set<Chunk> chunks, ChunkCatalogue catalogue, int maxChunks, ForkJoinPool pool){
+		this(numBytes, chunks, catalogue, maxChunks, pool, false);
+	}
+
+	private BudgetProblemProcessor(long numBytes, Set<Chunk> chunks, ChunkCatalogue catalogue, int maxChunks, ForkJoinPool pool, boolean ownsPool){
+
+		if(maxChunks < 0){
+			if(ownsPool){
+				pool.shutdown();
+			}
+			throw new IllegalArgumentException("Max chunks must be at least 0, was " + maxChunks);
+		}
+		this.pool = pool;
+
+		//order chunks by right bound, so that chunks reaching the same position are contiguous
+		this.chunks = chunks.toArray(new Chunk[chunks.size()]);
+		Arrays.sort(this.chunks, Chunk.getRightComparator());
+		costs = new double[this.chunks.length];
+		for(int i = 0; i < this.chunks.length; i++){
+			costs[i] = catalogue.cost(this.chunks[i]);
+		}
+
+		//collect distinct positions reachable by a cover, starting from empty cover at 0
+		long[] reachable = new long[this.chunks.length + 1];
+		for(int i = 0; i < this.chunks.length; i++){
+			reachable[i + 1] = Math.min(this.chunks[i].right, numBytes);
+		}
+		Arrays.sort(reachable);
+		int distinct = 0;
+		for(int i = 0; i < reachable.length; i++){
+			if(distinct == 0 || reachable[i] != reachable[distinct - 1]){
+				reachable[distinct++] = reachable[i];
+			}
+		}
+		positions = Arrays.copyOf(reachable, distinct);
+
+		//index first chunk reaching each position, and first position each chunk can extend
+		targetStart = new int[positions.length + 1];
+		chunkSource = new int[this.chunks.length];
+		int target = 0;
+		for(int i = 0; i < this.chunks.length; i++){
+			long right = Math.min(this.chunks[i].right, numBytes);
+			while(positions[target] < right){
+				targetStart[++target] = i;
+			}
+			chunkSource[i] = lowerBound(positions, this.chunks[i].left);
+		}
+		while(target < positions.length){
+			targetStart[++target] = this.chunks.length;
+		}
+
+		//layer 0, only the empty cover at position 0
+		layerCosts = new double[maxChunks + 1][];
+		layerChunk = new int[maxChunks + 1][];
+		layerOrigin = new int[maxChunks + 1][];
+		layerCosts[0] = new double[positions.length];
+		Arrays.fill(layerCosts[0], Double.POSITIVE_INFINITY);
+		layerCosts[0][0] = 0;
+
+		costByBudget = new double[maxChunks + 1];
+		costByBudget[0] = positions[positions.length - 1] >= numBytes ? layerCosts[0][positions.length - 1] : Double.POSITIVE_INFINITY;
+
+		boolean improving = true;
+		try{
+			for(int layer = 1; layer <= maxChunks; layer++){
+				if(improving){
+					improving = computeLayer(layer);
+				}else{
+					//previous layer is final, share it
+					layerCosts[layer] = layerCosts[layer - 1];
+				}
+				costByBudget[layer] = positions[positions.length - 1] >= numBytes ? layerCosts[layer][positions.length - 1] : Double.POSITIVE_INFINITY;
+			}
+		}finally{
+			if(ownsPool){
+				pool.shutdown();
+			}
+		}
+
+	}
+
+	/**
+	 * Build layer from previous layer
+	 * @param layer
+	 * @return true if any position improved on previous layer
+	 */
+	private boolean computeLayer(int layer){
+
+		double[] previous = layerCosts[layer - 1];
+
+		//lowest previous cost, and its position, at or beyond each position
+		double[] suffixCost = new double[positions.length];
+		int[] suffixOrigin = new int[positions.length];
+		for(int j = positions.length - 1; j >= 0; j--){
+			if(j == positions.length - 1 || previous[j] < suffixCost[j + 1]){
+				suffixCost[j] = previous[j];
+				suffixOrigin[j] = j;
+			}else{
+				suffixCost[j] = suffixCost[j + 1];
+				suffixOrigin[j] = suffixOrigin[j + 1];
+			}
+		}
+
+		layerCosts[layer] = new double[positions.length];
+		layerChunk[layer] = new int[positions.length];
+		layerOrigin[layer] = new int[positions.length];
+		LayerTask task = new LayerTask(layer, suffixCost, suffixOrigin, 0, positions.length);
+		pool.invoke(task);
+		return task.improved;
+	}
+
+	/**
+	 * Retrieve cost of best solution within full budget, null if no solution
+	 * @return
+	 */
+	public Double getLowestCost(){
+		double cost = costByBudget[costByBudget.length - 1];
+		return Double.isInfinite(cost) ? null : cost;
+	}
+
+	/**
+	 * Retrieve best achievable cost for every budget from 0 to maximum chunk count, infinite if no solution
+	 * fits a budget
+	 * @return
+	 */
+	public double[] getCostByBudget(){
+		return costByBudget.clone();
+	}
+
+	/**
+	 * Retrieve chunk sequence of best solution within full budget, null if no solution
+	 * @return
+	 */
+	public List<Chunk> getBestSequence(){
+		return getBestSequence(costByBudget.length - 1);
+	}
+
+	/**
+	 * Retrieve chunk sequence of best solution within budget, null if no solution
+	 * @param budget
+	 * @return
+	 */
+	public List<Chunk> getBestSequence(int budget){
+
+		if(Double.isInfinite(costByBudget[budget])){
+			return null;
+		}
+
+		//walk back from full image, dropping to lower layers where a position was carried over
+		LinkedList<Chunk> output = new LinkedList<>();
+		int layer = budget, position = positions.length - 1;
+		while(position != 0){
+			if(layerChunk[layer] == null || layerChunk[layer][position] < 0){
+				layer--;
+			}else{
+				output.addFirst(chunks[layerChunk[layer][position]]);
+				position = layerOrigin[layer][position];
+				layer--;
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * Find index of first sorted value greater than or equal to key
+	 * @param sorted
+	 * @param key
+	 * @return
+	 */
+	private static int lowerBound(long[] sorted, long key){
+		int low = 0, high = sorted.length;
+		while(low < high){
+			int mid = (low + high) >>> 1;
+			if(sorted[mid] < key){
+				low = mid + 1;
+			}else{
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Inner class computing one layer over a range of positions, splitting while range holds many chunks
+	 *
+	 */
+	@SuppressWarnings("serial")
+	private class LayerTask extends RecursiveAction {
+
+		final int layer, from, to;
+		final double[] suffixCost;
+		final int[] suffixOrigin;
+		boolean improved;
+
+		/**
+		 * Create task for range of positions
+		 * @param layer
+		 * @param suffixCost lowest previous layer cost at or beyond each position
+		 * @param suffixOrigin position of lowest previous layer cost
+		 * @param from first position index (inclusive)
+		 * @param to last position index (exclusive)
+		 */
+		LayerTask(int layer, double[] suffixCost, int[] suffixOrigin, int from, int to){
+			this.layer = layer;
+			this.suffixCost = suffixCost;
+			this.suffixOrigin = suffixOrigin;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+
+			if(to - from > 1 && targetStart[to] - targetStart[from] > SEQUENTIAL_THRESHOLD){
+				int mid = (from + to) >>> 1;
+				LayerTask lower = new LayerTask(layer, suffixCost, suffixOrigin, from, mid);
+				LayerTask upper = new LayerTask(layer, suffixCost, suffixOrigin, mid, to);
+				invokeAll(lower, upper);
+				improved = lower.improved || upper.improved;
+				return;
+			}
+
+			double[] previous = layerCosts[layer - 1], current = layerCosts[layer];
+			int[] chunkUsed = layerChunk[layer], origin = layerOrigin[layer];
+			for(int j = from; j < to; j++){
+				//carry over cover from previous layer, then try every chunk reaching this position
+				current[j] = previous[j];
+				chunkUsed[j] = -1;
+				for(int i = targetStart[j]; i < targetStart[j + 1]; i++){
+					if(chunkSource[i] >= j){
+						//chunk starts at or beyond position it reaches, can't extend any cover
+						continue;
+					}
+					double cost = suffixCost[chunkSource[i]] + costs[i];
+					if(cost < current[j]){
+						current[j] = cost;
+						chunkUsed[j] = i;
+						origin[j] = suffixOrigin[chunkSource[i]];
+					}
+				}
+				improved |= chunkUsed[j] >= 0;
+			}
+		}
+
+	}
+
+}
@@ -12,14 +12,30 @@ public class Chunk {
 	public static long bandwidth = 0, latency = 0;	
 	public final long left, right;
 	
+	//source offering chunk, and index into cost array of catalogue that created chunk (-1 if none)
+	public final int source, id;
+	
 	/**
-	 * Make new chunk representation
+	 * Make new chunk representation, offered by default source
 	 * @param left left bound (inclusive)
 	 * @param right right bound (exclusive)
 	 */
 	public Chunk(long left, long right){
+		this(left, right, ChunkCatalogue.DEFAULT_SOURCE, -1);
+	}
+	
+	/**
+	 * Make new chunk representation
+	 * @param left left bound (inclusive)
+	 * @param right right bound (exclusive)
+	 * @param source source offering chunk
+	 * @param id index into catalogue cost array, -1 if not catalogued
+	 */
+	Chunk(long left, long right, int source, int id){
 		this.left = left;
 		this.right = right;
+		this.source = source;
+		this.id = id;
 	}
 	
 	/**
@@ -40,7 +56,8 @@ public class Chunk {
 	}
 	
 	/**
-	 * Get cost to request and transmit chunk
+	 * Get cost to request and transmit chunk over default link, see {@link ChunkCatalogue#cost(Chunk)}
+	 * for per source cost
 	 * @return
 	 */
 	public double cost(){
@@ -99,7 +116,7 @@ public class Chunk {
             return false;
 
         Chunk rhs = (Chunk) obj;
-        return rhs.left == left && rhs.right == right;
+        return rhs.left == left && rhs.right == right && rhs.source == source;
 	}
 	
 	/**
@@ -107,15 +124,18 @@ public class Chunk {
 	 */
 	@Override
 	public String toString(){
+		if(source != ChunkCatalogue.DEFAULT_SOURCE){
+			return "["+left+","+right+"]@"+source;
+		}
 		return "["+left+","+right+"]";	
 	}
 	
 	/**
-	 * Hashcode of chunk, XOR bound hashcodes
+	 * Hashcode of chunk, XOR bound and source hashcodes
 	 */
 	@Override
 	public int hashCode(){
-		return Long.valueOf(left).hashCode()^Long.valueOf(right).hashCode();
+		return Long.valueOf(left).hashCode()^Long.valueOf(right).hashCode()^(source * 31);
 		
 	}
 	
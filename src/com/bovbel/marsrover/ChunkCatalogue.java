@@ -0,0 +1,192 @@
+package com.bovbel.marsrover;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Catalogue of chunks offered by one or more sources (mirrors), each with its own latency, bandwidth
+ * and cap on concurrent requests
+ *
+ * Cost of every catalogued chunk is computed once, when the chunk is added, into a primitive array indexed
+ * by chunk id, so cost lookups during search are a single array read. Chunks not created by this catalogue,
+ * including chunks of another catalogue with the same id, are costed on demand from their source parameters.
+ *
+ * Adding chunks and sources is not thread safe. Cost lookups are safe concurrently with a single thread adding
+ * chunks, for chunks whose addition happened-before the lookup.
+ *
+ */
+public class ChunkCatalogue {
+
+	//source id of the default link, as given in problem header
+	public static final int DEFAULT_SOURCE = 0;
+
+	//concurrency of sources without a cap
+	public static final int UNLIMITED = Integer.MAX_VALUE;
+
+	private long[] latency = new long[0], bandwidth = new long[0];
+	private int[] concurrency = new int[0];
+
+	private final Set<Chunk> chunks = new HashSet<>();
+	//chunk and cost by id, published through volatile references and count so that a grown array
+	//is seen with its contents. Costs are written before chunks, and read after them
+	private volatile double[] costs = new double[16];
+	private volatile Chunk[] catalogued = new Chunk[16];
+	private volatile int count = 0;
+
+	/**
+	 * Create catalogue with default source
+	 * @param latency
+	 * @param bandwidth
+	 */
+	public ChunkCatalogue(long latency, long bandwidth){
+		addSource(DEFAULT_SOURCE, latency, bandwidth, UNLIMITED);
+	}
+
+	/**
+	 * Create catalogue with default source, and catalogue chunks offered by it, so that their costs are
+	 * precomputed. Search over {@link #getChunks()} rather than the given chunks, which remain uncatalogued
+	 * @param latency
+	 * @param bandwidth
+	 * @param chunks
+	 * @throws IllegalArgumentException if a chunk is offered by another source
+	 */
+	public ChunkCatalogue(long latency, long bandwidth, Set<Chunk> chunks){
+		this(latency, bandwidth);
+		for(Chunk chunk : chunks){
+			add(chunk.left, chunk.right, chunk.source);
+		}
+	}
+
+	/**
+	 * Define or redefine source, must happen before adding chunks from the source
+	 * @param source
+	 * @param latency
+	 * @param bandwidth
+	 * @param concurrency maximum concurrent requests to source, at least 1
+	 */
+	public void addSource(int source, long latency, long bandwidth, int concurrency){
+		if(source >= this.latency.length){
+			int size = source + 1;
+			this.latency = Arrays.copyOf(this.latency, size);
+			this.bandwidth = Arrays.copyOf(this.bandwidth, size);
+			//ids skipped over are left with zero concurrency, marking them undefined
+			this.concurrency = Arrays.copyOf(this.concurrency, size);
+		}
+		this.latency[source] = latency;
+		this.bandwidth[source] = bandwidth;
+		this.concurrency[source] = concurrency;
+	}
+
+	/**
+	 * Check if source has been defined
+	 * @param source
+	 * @return
+	 */
+	public boolean hasSource(int source){
+		return source >= 0 && source < concurrency.length && concurrency[source] > 0;
+	}
+
+	/**
+	 * Get number of source ids, including undefined ids below highest defined source
+	 * @return
+	 */
+	public int getNumSources(){
+		return concurrency.length;
+	}
+
+	public long getLatency(int source){
+		return latency[source];
+	}
+
+	public long getBandwidth(int source){
+		return bandwidth[source];
+	}
+
+	/**
+	 * Get cap on concurrent requests to source, {@link #UNLIMITED} if uncapped
+	 * @param source
+	 * @return
+	 */
+	public int getConcurrency(int source){
+		return concurrency[source];
+	}
+
+	/**
+	 * Add chunk offered by defined source, computing its cost
+	 * @param left
+	 * @param right
+	 * @param source
+	 * @return catalogued chunk, null if chunk was already catalogued
+	 */
+	public Chunk add(long left, long right, int source){
+		if(!hasSource(source)){
+			throw new IllegalArgumentException("Undefined source " + source);
+		}
+		Chunk chunk = new Chunk(left, right, source, chunks.size());
+		if(!chunks.add(chunk)){
+			return null;
+		}
+		double[] grownCosts = costs;
+		Chunk[] grownCatalogued = catalogued;
+		if(chunk.id >= grownCosts.length){
+			grownCosts = Arrays.copyOf(grownCosts, grownCosts.length * 2);
+			grownCatalogued = Arrays.copyOf(grownCatalogued, grownCatalogued.length * 2);
+		}
+		grownCosts[chunk.id] = computeCost(chunk);
+		grownCatalogued[chunk.id] = chunk;
+		costs = grownCosts;
+		catalogued = grownCatalogued;
+		count = chunk.id + 1;
+		return chunk;
+	}
+
+	/**
+	 * Get all catalogued chunks, unmodifiable
+	 * @return
+	 */
+	public Set<Chunk> getChunks(){
+		return Collections.unmodifiableSet(chunks);
+	}
+
+	/**
+	 * Get catalogued chunks, keeping only the cheapest source for each byte range. Since identical ranges
+	 * are interchangeable, a search over these finds the same lowest cost with fewer branches.
+	 * @return
+	 */
+	public Set<Chunk> getCheapestChunks(){
+		Map<Chunk, Chunk> cheapest = new HashMap<>();
+		for(Chunk chunk : chunks){
+			Chunk range = new Chunk(chunk.left, chunk.right);
+			Chunk current = cheapest.get(range);
+			if(current == null || cost(chunk) < cost(current)){
+				cheapest.put(range, chunk);
+			}
+		}
+		return new HashSet<>(cheapest.values());
+	}
+
+	/**
+	 * Get cost to request and transmit chunk from its source
+	 * @param chunk
+	 * @return
+	 * @throws IllegalArgumentException if chunk is not catalogued here and its source is undefined
+	 */
+	public double cost(Chunk chunk){
+		if(chunk.id >= 0 && chunk.id < count && catalogued[chunk.id] == chunk){
+			return costs[chunk.id];
+		}
+		return computeCost(chunk);
+	}
+
+	private double computeCost(Chunk chunk){
+		if(!hasSource(chunk.source)){
+			throw new IllegalArgumentException("Undefined source " + chunk.source);
+		}
+		return 2*latency[chunk.source] + chunk.size() / (double)bandwidth[chunk.source];
+	}
+
+}
@@ -0,0 +1,28 @@
+package com.bovbel.marsrover;
+
+import java.util.List;
+
+/**
+ * Index of chunks, for lookup of chunks containing any byte index
+ *
+ * Implementations must be safe to query from multiple threads once constructed
+ *
+ */
+public interface ChunkIndex {
+
+	/**
+	 * Get list of chunks that contain a value, sorted by size. Returns null if index is empty
+	 * @param value
+	 * @return
+	 */
+	public List<Chunk> getChunksContainingValue(long value);
+
+	/**
+	 * Get lists of chunks containing each of a batch of values in one traversal, each list sorted by
+	 * size and in the same order as the values. Returns null if index is empty
+	 * @param values query values, sorted ascending without duplicates
+	 * @return
+	 */
+	public List<List<Chunk>> getChunksContainingValues(long[] values);
+
+}
@@ -0,0 +1,103 @@
+package com.bovbel.marsrover;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Small memo of recent chunk index query results, keyed by byte position
+ *
+ * Direct mapped and lock free, a new result simply replaces whatever was stored in its slot.
+ * Stored lists are shared between readers, so they are made unmodifiable.
+ *
+ * On dense input a single result can hold a large fraction of all chunks, so the memo is bounded by
+ * the total number of chunk references it holds as well as by slots. Once over budget, entries are
+ * evicted round robin, and a result larger than the whole budget is not memoized.
+ *
+ */
+public class ChunkQueryCache {
+
+	private final AtomicReferenceArray<Entry> slots;
+	private final int mask;
+	private final long maxChunks;
+	private final AtomicLong cachedChunks = new AtomicLong();
+	private final AtomicInteger evictCursor = new AtomicInteger();
+
+	/**
+	 * Create cache with capacity rounded up to a power of two, holding at most maxChunks chunk references
+	 * @param capacity
+	 * @param maxChunks
+	 */
+	public ChunkQueryCache(int capacity, long maxChunks){
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		slots = new AtomicReferenceArray<>(size);
+		mask = size - 1;
+		this.maxChunks = maxChunks;
+	}
+
+	/**
+	 * Lookup query result for position, null if not memoized
+	 * @param position
+	 * @return
+	 */
+	public List<Chunk> get(long position){
+		Entry entry = slots.get(slot(position));
+		if(entry != null && entry.position == position){
+			return entry.chunks;
+		}
+		return null;
+	}
+
+	/**
+	 * Memoize query result for position, returning the shared unmodifiable list
+	 * @param position
+	 * @param chunks
+	 * @return
+	 */
+	public List<Chunk> put(long position, List<Chunk> chunks){
+		Entry entry = new Entry(position, Collections.unmodifiableList(chunks));
+		if(chunks.size() > maxChunks){
+			return entry.chunks;
+		}
+		Entry replaced = slots.getAndSet(slot(position), entry);
+		long cached = cachedChunks.addAndGet(chunks.size() - (replaced == null ? 0 : replaced.chunks.size()));
+
+		//evict other entries until back within budget
+		for(int tries = 0; cached > maxChunks && tries <= mask; tries++){
+			int slot = evictCursor.getAndIncrement() & mask;
+			Entry evicted = slots.get(slot);
+			if(evicted != null && evicted != entry && slots.compareAndSet(slot, evicted, null)){
+				cached = cachedChunks.addAndGet(-evicted.chunks.size());
+			}
+		}
+		return entry.chunks;
+	}
+
+	/**
+	 * Spread position bits across slot index
+	 * @param position
+	 * @return
+	 */
+	private int slot(long position){
+		long hash = position * 0x9E3779B97F4A7C15L;
+		return (int)(hash >>> 32) & mask;
+	}
+
+	/**
+	 * Immutable memo entry
+	 *
+	 */
+	private static class Entry {
+
+		final long position;
+		final List<Chunk> chunks;
+
+		Entry(long position, List<Chunk> chunks){
+			this.position = position;
+			this.chunks = chunks;
+		}
+	}
+
+}
@@ -0,0 +1,20 @@
+package com.bovbel.marsrover;
+
+/**
+ * Block containment test used by {@link BlockedChunkIndex}
+ *
+ */
+interface ContainmentKernel {
+
+	/**
+	 * Test up to 64 consecutive chunks for containment of a value
+	 * @param left left bounds (inclusive)
+	 * @param right right bounds (exclusive)
+	 * @param from index of first chunk in block
+	 * @param length number of chunks in block, at most 64
+	 * @param value
+	 * @return match mask, with bit i set if chunk (from + i) contains value
+	 */
+	public long match(long[] left, long[] right, int from, int length, long value);
+
+}
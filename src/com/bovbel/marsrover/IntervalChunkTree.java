@@ -1,5 +1,6 @@
 package com.bovbel.marsrover;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -22,7 +23,7 @@ import java.util.concurrent.Future;
  * @author Pavel
  *
  */
-public class IntervalChunkTree {
+public class IntervalChunkTree implements ChunkIndex {
 	
 	//reference to root of tree
 	IntervalNode root;
@@ -32,13 +33,24 @@ public class IntervalChunkTree {
 	 * @param chunks
 	 */
 	public IntervalChunkTree(Set<Chunk> chunks){	
+		this(chunks, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Build tree from chunks, starting from root node, using a given number of threads
+	 * @param chunks
+	 * @param parallelism
+	 */
+	public IntervalChunkTree(Set<Chunk> chunks, int parallelism){	
 		if(!chunks.isEmpty()){
-			ExecutorService executor = new ForkJoinPool();
+			ExecutorService executor = new ForkJoinPool(parallelism);
 			try {
 				root = executor.submit(new IntervalNodeGenerator(executor,chunks)).get();
 			} catch (InterruptedException | ExecutionException e) {
 				System.err.println("Error getting root node from future");
-			}		
+			} finally {
+				executor.shutdown();
+			}
 		}
 	}
 	
@@ -55,6 +67,7 @@ public class IntervalChunkTree {
 	 * @param value
 	 * @return
 	 */
+	@Override
 	public List<Chunk> getChunksContainingValue(long value) {
 		
 		if (root == null){
@@ -112,6 +125,104 @@ public class IntervalChunkTree {
 		return output;		
 	}	
 
+	/**
+	 * Get lists of chunks containing each of a sorted batch of values, walking each node once
+	 * for the whole batch
+	 * @param values
+	 * @return
+	 */
+	@Override
+	public List<List<Chunk>> getChunksContainingValues(long[] values) {
+
+		if (root == null){
+			return null;
+		}
+
+		List<List<Chunk>> output = new ArrayList<>(values.length);
+		for(int i = 0; i < values.length; i++){
+			output.add(new ArrayList<Chunk>());
+		}
+
+		//start recursively filling lists from root node, with full range of values
+		buildChunkLists(root, values, 0, values.length, output);
+		for(List<Chunk> chunks : output){
+			Collections.sort(chunks, Chunk.getSizeComparator());
+		}
+		return output;
+	}
+
+	/**
+	 * Recursive function for tree traversal while filling chunk lists for a range of sorted values
+	 * @param start
+	 * @param values
+	 * @param from first value index (inclusive)
+	 * @param to last value index (exclusive)
+	 * @param output
+	 */
+	private void buildChunkLists(IntervalNode start, long[] values, int from, int to, List<List<Chunk>> output){
+
+		//split value range around key
+		int lower = lowerBound(values, from, to, start.getKey());
+		int upper = (lower < to && values[lower] == start.getKey()) ? lower + 1 : lower;
+
+		//value matching key gets all chunks at this node
+		if(upper > lower){
+			output.get(lower).addAll(start.getLeftSortedChunks());
+		}
+
+		//values below key, every chunk starting at or before a value contains it and all larger values below key
+		if(lower > from){
+			for(Chunk eval : start.getLeftSortedChunks()){
+				if(eval.left > values[lower - 1]){
+					//since chunks are sorted, safe to stop search on failed bounds check
+					break;
+				}
+				for(int i = lowerBound(values, from, lower, eval.left); i < lower; i++){
+					output.get(i).add(eval);
+				}
+			}
+			if(start.getLeft() != null){
+				buildChunkLists(start.getLeft(), values, from, lower, output);
+			}
+		}
+
+		//values above key, every chunk ending after a value contains it and all smaller values above key
+		if(to > upper){
+			for(Chunk eval : start.getRightSortedChunks()){
+				if(eval.right <= values[upper]){
+					break;
+				}
+				int end = lowerBound(values, upper, to, eval.right);
+				for(int i = upper; i < end; i++){
+					output.get(i).add(eval);
+				}
+			}
+			if(start.getRight() != null){
+				buildChunkLists(start.getRight(), values, upper, to, output);
+			}
+		}
+	}
+
+	/**
+	 * Find index of first sorted value in range greater than or equal to key
+	 * @param sorted
+	 * @param from
+	 * @param to
+	 * @param key
+	 * @return
+	 */
+	private static int lowerBound(long[] sorted, int from, int to, long key){
+		while(from < to){
+			int mid = (from + to) >>> 1;
+			if(sorted[mid] < key){
+				from = mid + 1;
+			}else{
+				to = mid;
+			}
+		}
+		return from;
+	}
+
 	/**
 	 * Private class for a subtask to build a node in the tree
 	 * @author Pavel
@@ -0,0 +1,218 @@
+package com.bovbel.marsrover;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for a remote range server, serving byte ranges of a synthetic image over loopback TCP
+ * with simulated latency and bandwidth
+ *
+ * Requests are a single ASCII line "left,right\n", answered after 2 * latency with right - left bytes.
+ * Bandwidth is that of a single link shared by all connections: each slice of a response reserves its
+ * transfer time on the link after slices already reserved, so concurrent requests split the bandwidth
+ * rather than multiply it, while their latencies still overlap. Byte at offset i of the image is
+ * {@link #contentAt(long)}, so fetched output can be verified without storing the image, see
+ * {@link #findMismatch(Path, long)}.
+ *
+ */
+public class LoopbackRangeServer implements Closeable {
+
+	//pacing granularity, bytes are released in slices of this duration
+	private static final long SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private final ServerSocketChannel server;
+	private final ExecutorService executor;
+	private final long latencyNanos;
+	private final double bandwidth;
+
+	//time at which link is free for next slice, lagging at most one slice behind now when idle
+	private long linkFreeNanos;
+
+	/**
+	 * Start server on an ephemeral loopback port
+	 * @param latency one way latency in seconds
+	 * @param bandwidth bytes per second shared by all connections, infinite for no pacing
+	 * @throws IOException
+	 */
+	public LoopbackRangeServer(double latency, double bandwidth) throws IOException {
+		this.latencyNanos = (long) (latency * 1e9);
+		this.bandwidth = bandwidth;
+		this.linkFreeNanos = System.nanoTime();
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		executor = PlanExecutor.newTaskExecutor(PlanExecutor.UNBOUNDED);
+		executor.execute(new Runnable(){
+			@Override
+			public void run() {
+				acceptLoop();
+			}
+		});
+	}
+
+	/**
+	 * Get address server is listening on
+	 * @return
+	 * @throws IOException
+	 */
+	public InetSocketAddress getAddress() throws IOException {
+		return (InetSocketAddress) server.getLocalAddress();
+	}
+
+	/**
+	 * Get transport that fetches ranges from this server, one connection per range
+	 * @return
+	 * @throws IOException
+	 */
+	public RangeTransport getTransport() throws IOException {
+		final InetSocketAddress address = getAddress();
+		return new RangeTransport(){
+			@Override
+			public ReadableByteChannel open(Chunk chunk) throws IOException {
+				SocketChannel channel = SocketChannel.open(address);
+				ByteBuffer request = StandardCharsets.US_ASCII.encode(chunk.left + "," + chunk.right + "\n");
+				while(request.hasRemaining()){
+					channel.write(request);
+				}
+				return channel;
+			}
+		};
+	}
+
+	/**
+	 * Content of synthetic image at offset
+	 * @param offset
+	 * @return
+	 */
+	public static byte contentAt(long offset){
+		return (byte) (offset ^ (offset >>> 8) ^ (offset >>> 16));
+	}
+
+	/**
+	 * Check first numBytes of file against synthetic image
+	 * @param file
+	 * @param numBytes
+	 * @return offset of first byte that differs from {@link #contentAt(long)}, -1 if all match
+	 * @throws IOException
+	 */
+	public static long findMismatch(Path file, long numBytes) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			if(channel.size() < numBytes){
+				return channel.size();
+			}
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+			for(long offset = 0; offset < numBytes; offset += buffer.limit()){
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), numBytes - offset));
+				while(buffer.hasRemaining()){
+					channel.read(buffer, offset + buffer.position());
+				}
+				for(int i = 0; i < buffer.limit(); i++){
+					if(buffer.get(i) != contentAt(offset + i)){
+						return offset + i;
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Reserve transfer time of slice on link
+	 * @param length slice length in bytes
+	 * @return time slice is due to be released
+	 */
+	private synchronized long reserve(int length){
+		linkFreeNanos = Math.max(linkFreeNanos, System.nanoTime() - SLICE_NANOS) + (long) (length / bandwidth * 1e9);
+		return linkFreeNanos;
+	}
+
+	private void acceptLoop(){
+		while(server.isOpen()){
+			try {
+				final SocketChannel channel = server.accept();
+				executor.execute(new Runnable(){
+					@Override
+					public void run() {
+						serve(channel);
+					}
+				});
+			} catch (IOException e) {
+				//server closed
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Read request from connection and stream requested range, paced to shared link bandwidth
+	 * @param channel
+	 */
+	private void serve(SocketChannel channel){
+		try(SocketChannel connection = channel){
+
+			//read request line
+			ByteBuffer request = ByteBuffer.allocate(64);
+			while(request.position() == 0 || request.get(request.position() - 1) != '\n'){
+				if(!request.hasRemaining() || connection.read(request) < 0){
+					System.err.println("Malformed range request");
+					return;
+				}
+			}
+			request.flip();
+			String[] bounds = StandardCharsets.US_ASCII.decode(request).toString().trim().split(",");
+			long left = Long.parseLong(bounds[0]), right = Long.parseLong(bounds[1]);
+
+			//simulate request and response propagation
+			TimeUnit.NANOSECONDS.sleep(2 * latencyNanos);
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.max(1, Math.min(1 << 20, bandwidth * SLICE_NANOS / 1e9)));
+			long offset = left;
+			while(offset < right){
+				buffer.clear();
+				int length = (int) Math.min(buffer.capacity(), right - offset);
+				for(int i = 0; i < length; i++){
+					buffer.put(contentAt(offset + i));
+				}
+				buffer.flip();
+
+				//hold slice back until link would have transferred it, after slices reserved by other connections
+				long wait = reserve(length) - System.nanoTime();
+				if(wait > 0){
+					TimeUnit.NANOSECONDS.sleep(wait);
+				}
+
+				while(buffer.hasRemaining()){
+					connection.write(buffer);
+				}
+				offset += length;
+			}
+		} catch (IOException | InterruptedException | RuntimeException e) {
+			//requests in progress are abandoned when server is closed
+			if(server.isOpen()){
+				System.err.println("Error serving range: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Stop accepting connections and abandon requests in progress
+	 */
+	@Override
+	public void close() throws IOException {
+		server.close();
+		executor.shutdownNow();
+	}
+
+}
@@ -0,0 +1,309 @@
+package com.bovbel.marsrover;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Chunk index built incrementally while chunks are still being read, so that search can begin on low
+ * offsets before the whole input is available
+ *
+ * The image is divided into equal byte range partitions, and each chunk is assigned to the partition
+ * holding its left bound. Chunks are expected in ascending order of left bound: once a chunk starts in a
+ * later partition, all earlier partitions are sealed and their {@link BlockedChunkIndex} is built on the
+ * executor. A chunk containing a value starts at or before it, so a query only waits for partitions up
+ * to the one holding the value, and merges their size ordered matches. Waiting uses
+ * {@link ForkJoinPool#managedBlock}, so search pool threads blocked on a partition are compensated. Once
+ * input is complete, a single index over all partitions is built as well and queries switch to it, as
+ * merging matches of many partitions costs more than the query itself on dense problems.
+ *
+ * Only the cheapest source is indexed for each byte range. Identical ranges share a left bound, so they
+ * always meet in the same partition.
+ *
+ * Chunks are added from a single thread. A chunk arriving after its partition was sealed can't be indexed,
+ * which {@link #isOrdered()} reports so that the caller can search again with a complete index.
+ * Queries never return null, an empty index yields empty lists.
+ *
+ */
+public class PartitionedChunkIndex implements ChunkIndex {
+
+	private final long numBytes, partitionBytes;
+	private final ChunkCatalogue catalogue;
+	private final ExecutorService executor;
+
+	private final List<List<Chunk>> pending = new ArrayList<>();
+	private final List<FutureTask<Partition>> partitions = new ArrayList<>();
+	private int sealed = 0;
+	private volatile boolean ordered = true;
+	private volatile BlockedChunkIndex complete;
+
+	/**
+	 * Create empty index over numBytes, building partitions on executor
+	 * @param numBytes
+	 * @param numPartitions
+	 * @param catalogue catalogue of added chunks, for choosing cheapest source of each range
+	 * @param executor
+	 * @throws IllegalArgumentException if numPartitions is less than 1
+	 */
+	public PartitionedChunkIndex(long numBytes, int numPartitions, ChunkCatalogue catalogue, ExecutorService executor){
+		if(numPartitions < 1){
+			throw new IllegalArgumentException("Number of partitions must be at least 1, was " + numPartitions);
+		}
+		this.numBytes = Math.max(1, numBytes);
+		this.partitionBytes = (this.numBytes + numPartitions - 1) / numPartitions;
+		this.catalogue = catalogue;
+		this.executor = executor;
+		int count = (int) ((this.numBytes + partitionBytes - 1) / partitionBytes);
+		for(int partition = 0; partition < count; partition++){
+			pending.add(new ArrayList<Chunk>());
+			final int index = partition;
+			partitions.add(new FutureTask<Partition>(new Callable<Partition>(){
+				@Override
+				public Partition call() {
+					return build(index);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Add chunk, sealing all partitions before the one it starts in
+	 * @param chunk
+	 * @return false if chunk's partition was already sealed, so chunk could not be indexed
+	 */
+	public boolean add(Chunk chunk){
+		int partition = partitionOf(chunk.left);
+		if(partition < sealed){
+			ordered = false;
+			return false;
+		}
+		pending.get(partition).add(chunk);
+		sealUpTo(partition);
+		return true;
+	}
+
+	/**
+	 * Seal all remaining partitions once input is complete, and build index over all of them
+	 */
+	public void finish(){
+		sealUpTo(partitions.size());
+		//missed chunks make partitions incomplete anyway, caller searches again
+		if(!ordered){
+			return;
+		}
+		executor.execute(new Runnable(){
+			@Override
+			public void run() {
+				Set<Chunk> chunks = new HashSet<>();
+				try{
+					for(FutureTask<Partition> partition : partitions){
+						chunks.addAll(partition.get().chunks);
+					}
+				}catch(InterruptedException | ExecutionException e){
+					//keep querying partitions, failure is reported by them
+					return;
+				}
+				complete = new BlockedChunkIndex(chunks);
+			}
+		});
+	}
+
+	/**
+	 * Check whether every chunk arrived before its partition was sealed, so queries saw complete partitions
+	 * @return
+	 */
+	public boolean isOrdered(){
+		return ordered;
+	}
+
+	private void sealUpTo(int partition){
+		while(sealed < partition){
+			executor.execute(partitions.get(sealed++));
+		}
+	}
+
+	private int partitionOf(long value){
+		return (int) Math.min(partitions.size() - 1, Math.max(0, value / partitionBytes));
+	}
+
+	/**
+	 * Build partition index from its pending chunks, keeping cheapest source of each range
+	 * @param partition
+	 * @return
+	 */
+	private Partition build(int partition){
+		Map<Chunk, Chunk> cheapest = new HashMap<>();
+		long maxRight = Long.MIN_VALUE;
+		for(Chunk chunk : pending.get(partition)){
+			Chunk range = new Chunk(chunk.left, chunk.right);
+			Chunk current = cheapest.get(range);
+			if(current == null || catalogue.cost(chunk) < catalogue.cost(current)){
+				cheapest.put(range, chunk);
+			}
+			maxRight = Math.max(maxRight, chunk.right);
+		}
+		//partition input is no longer needed once indexed
+		pending.set(partition, null);
+		Set<Chunk> chunks = new HashSet<>(cheapest.values());
+		return new Partition(chunks.isEmpty() ? null : new BlockedChunkIndex(chunks), chunks, maxRight);
+	}
+
+	/**
+	 * Get partition, blocking until it is sealed and built
+	 * @param partition
+	 * @return
+	 */
+	private Partition getPartition(int partition){
+		final FutureTask<Partition> task = partitions.get(partition);
+		if(!task.isDone()){
+			try {
+				ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker(){
+					@Override
+					public boolean block() throws InterruptedException {
+						try {
+							task.get();
+						} catch (ExecutionException e) {
+							//reported below
+						}
+						return true;
+					}
+					@Override
+					public boolean isReleasable() {
+						return task.isDone();
+					}
+				});
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted waiting for partition " + partition, e);
+			}
+		}
+		try {
+			return task.get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new IllegalStateException("Failed to build partition " + partition, e);
+		}
+	}
+
+	@Override
+	public List<Chunk> getChunksContainingValue(long value) {
+		BlockedChunkIndex complete = this.complete;
+		if(complete != null){
+			return complete.getChunksContainingValue(value);
+		}
+		List<List<Chunk>> matches = new ArrayList<>();
+		for(int partition = 0; partition <= partitionOf(value); partition++){
+			Partition current = getPartition(partition);
+			//skip partitions without chunks reaching past value
+			if(current.index == null || current.maxRight <= value){
+				continue;
+			}
+			matches.add(current.index.getChunksContainingValue(value));
+		}
+		return mergeBySize(matches);
+	}
+
+	@Override
+	public List<List<Chunk>> getChunksContainingValues(long[] values) {
+
+		BlockedChunkIndex complete = this.complete;
+		if(complete != null){
+			return complete.getChunksContainingValues(values);
+		}
+
+		//collect matches of each partition, for values from first one at or after partition start
+		int last = values.length == 0 ? -1 : partitionOf(values[values.length - 1]);
+		List<List<List<Chunk>>> partitionMatches = new ArrayList<>();
+		int[] partitionFrom = new int[last + 1];
+		int from = 0;
+		for(int partition = 0; partition <= last; partition++){
+			Partition current = getPartition(partition);
+			//values before partition start can't be contained by its chunks
+			while(values[from] < partition * partitionBytes){
+				from++;
+			}
+			partitionFrom[partition] = from;
+			if(current.index == null || current.maxRight <= values[from]){
+				partitionMatches.add(null);
+				continue;
+			}
+			partitionMatches.add(current.index.getChunksContainingValues(Arrays.copyOfRange(values, from, values.length)));
+		}
+
+		//merge matches of each value across partitions
+		List<List<Chunk>> output = new ArrayList<>(values.length);
+		for(int i = 0; i < values.length; i++){
+			List<List<Chunk>> matches = new ArrayList<>();
+			for(int partition = 0; partition <= last && partitionFrom[partition] <= i; partition++){
+				if(partitionMatches.get(partition) != null){
+					matches.add(partitionMatches.get(partition).get(i - partitionFrom[partition]));
+				}
+			}
+			output.add(mergeBySize(matches));
+		}
+		return output;
+	}
+
+	/**
+	 * Merge partition matches, each already in size order, pairwise instead of sorting them again. Ties keep
+	 * partition order, which is left bound order, so output matches a single index over all partitions
+	 * @param runs matches of each partition, in partition order
+	 * @return
+	 */
+	private static List<Chunk> mergeBySize(List<List<Chunk>> runs){
+		while(runs.size() > 1){
+			List<List<Chunk>> merged = new ArrayList<>((runs.size() + 1) / 2);
+			for(int i = 0; i + 1 < runs.size(); i += 2){
+				merged.add(merge(runs.get(i), runs.get(i + 1)));
+			}
+			if(runs.size() % 2 == 1){
+				merged.add(runs.get(runs.size() - 1));
+			}
+			runs = merged;
+		}
+		return runs.isEmpty() ? new ArrayList<Chunk>() : runs.get(0);
+	}
+
+	/**
+	 * Merge two lists in size order, taking from first on ties
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	private static List<Chunk> merge(List<Chunk> a, List<Chunk> b){
+		List<Chunk> output = new ArrayList<>(a.size() + b.size());
+		int i = 0, j = 0;
+		while(i < a.size() && j < b.size()){
+			output.add(b.get(j).size() < a.get(i).size() ? b.get(j++) : a.get(i++));
+		}
+		output.addAll(a.subList(i, a.size()));
+		output.addAll(b.subList(j, b.size()));
+		return output;
+	}
+
+	/**
+	 * Sealed partition with its cheapest chunks and their index, null if it has none
+	 *
+	 */
+	private static class Partition {
+
+		final BlockedChunkIndex index;
+		final Set<Chunk> chunks;
+		final long maxRight;
+
+		Partition(BlockedChunkIndex index, Set<Chunk> chunks, long maxRight){
+			this.index = index;
+			this.chunks = chunks;
+			this.maxRight = maxRight;
+		}
+	}
+
+}
@@ -0,0 +1,196 @@
+package com.bovbel.marsrover;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Pipelined solver, overlapping input parsing, indexing and search instead of running them one after another
+ *
+ * As soon as the problem header is read, search starts on its own thread against a {@link PartitionedChunkIndex}.
+ * Parsed chunks are streamed into the index, which builds each byte range partition once input has moved past it,
+ * while search proceeds on low offsets and waits only for the partitions it reaches. Input sorted by left bound,
+ * as written by {@link ProblemDefinition#write(java.io.PrintWriter)}, gets the full overlap. Otherwise the
+ * pipelined search is stopped as soon as a chunk arrives for an already sealed partition, and the problem is
+ * searched again once all chunks are read, with the same index type, so the answer is the same either way.
+ *
+ * Usage: PipelinedSolver problemFile [partitions] [threads]
+ *
+ */
+public class PipelinedSolver {
+
+	//default number of byte range partitions of image
+	public static final int DEFAULT_PARTITIONS = 64;
+
+	private final int numPartitions, parallelism;
+
+	private ProblemDefinition problem;
+	private PartitionedChunkIndex index;
+	private ForkJoinPool searchPool;
+	private ProblemProcessorParallel processor;
+	private RuntimeException searchFailure;
+	private long readNanos, solveNanos;
+
+	/**
+	 * Create solver
+	 * @param numPartitions number of byte range partitions to index separately
+	 * @param parallelism number of search threads
+	 * @throws IllegalArgumentException if numPartitions or parallelism is less than 1
+	 */
+	public PipelinedSolver(int numPartitions, int parallelism){
+		if(numPartitions < 1 || parallelism < 1){
+			throw new IllegalArgumentException("Partitions and threads must be at least 1, were " + numPartitions + " and " + parallelism);
+		}
+		this.numPartitions = numPartitions;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Read and solve problem, blocking until search is complete
+	 * @param source
+	 * @return processor holding solution, null if problem is invalid
+	 * @throws IOException
+	 */
+	public ProblemProcessorParallel solve(Reader source) throws IOException {
+
+		long start = System.nanoTime();
+		final ExecutorService indexExecutor = Executors.newFixedThreadPool(Math.max(1, parallelism / 2));
+		final Thread[] search = new Thread[1];
+
+		try{
+			ProblemDefinition.read(source, new ProblemDefinition.Listener(){
+				@Override
+				public void header(final long numBytes, long numChunks, final ChunkCatalogue catalogue) {
+					problem = new ProblemDefinition(numBytes, numChunks, catalogue);
+					if(!problem.hasValidSources()){
+						return;
+					}
+					problem.applyCostParameters();
+
+					//begin search while chunks are still arriving
+					index = new PartitionedChunkIndex(numBytes, numPartitions, catalogue, indexExecutor);
+					searchPool = new ForkJoinPool(parallelism);
+					search[0] = new Thread(new Runnable(){
+						@Override
+						public void run() {
+							try{
+								processor = new ProblemProcessorParallel(numBytes, index, catalogue, searchPool);
+							}catch(RuntimeException e){
+								searchFailure = e;
+							}
+						}
+					}, "pipelined-search");
+					search[0].start();
+				}
+				@Override
+				public void chunk(Chunk chunk) {
+					if(index == null || !index.isOrdered()){
+						return;
+					}
+					//search may have missed chunk, stop it rather than let it finish with a wrong answer
+					if(!index.add(chunk)){
+						System.err.println("Input not sorted by left bound, stopping pipelined search");
+						searchPool.shutdownNow();
+					}
+				}
+			});
+		}finally{
+			//seal remaining partitions, so search can finish even if input ended early
+			if(index != null){
+				index.finish();
+			}
+			readNanos = System.nanoTime() - start;
+			if(search[0] != null){
+				try {
+					search[0].join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if(searchPool != null){
+				searchPool.shutdown();
+			}
+			indexExecutor.shutdown();
+		}
+
+		if(problem == null || search[0] == null || !problem.isValid()){
+			return null;
+		}
+
+		//chunks that arrived after their partition was searched were missed, search again with all chunks
+		//indexed the same way as partitions, so that order of input doesn't change the answer
+		if(!index.isOrdered()){
+			System.err.println("Searching again with complete index");
+			ChunkIndex complete = new BlockedChunkIndex(problem.catalogue.getCheapestChunks());
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try{
+				processor = new ProblemProcessorParallel(problem.numBytes, complete, problem.catalogue, pool);
+			}finally{
+				pool.shutdown();
+			}
+		}else if(searchFailure != null){
+			throw searchFailure;
+		}
+
+		solveNanos = System.nanoTime() - start;
+		return processor;
+	}
+
+	/**
+	 * Get time from start until input was fully read, in seconds
+	 * @return
+	 */
+	public double getReadSeconds(){
+		return readNanos / 1e9;
+	}
+
+	/**
+	 * Get time from start until solution was found, in seconds
+	 * @return
+	 */
+	public double getSolveSeconds(){
+		return solveNanos / 1e9;
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		if(args.length < 1){
+			System.err.println("Usage: PipelinedSolver problemFile [partitions] [threads]");
+			return;
+		}
+		PipelinedSolver solver;
+		try{
+			int partitions = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PARTITIONS;
+			int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+			solver = new PipelinedSolver(partitions, threads);
+		}catch(IllegalArgumentException e){
+			//also covers NumberFormatException
+			System.err.println("Invalid partitions or threads: " + e.getMessage());
+			System.err.println("Usage: PipelinedSolver problemFile [partitions] [threads]");
+			return;
+		}
+		ProblemProcessorParallel processor;
+		try(FileReader reader = new FileReader(args[0])){
+			processor = solver.solve(reader);
+		}
+		if(processor == null){
+			return;
+		}
+
+		if(processor.getBestSequence() != null){
+			for(Chunk chunk : processor.getBestSequence()){
+				System.err.println(chunk);
+			}
+		}
+		System.err.println(String.format("read %.3f s, solved %.3f s", solver.getReadSeconds(), solver.getSolveSeconds()));
+
+		//Output solution if one was found
+		if(processor.getLowestCost() != null){
+			System.out.println(String.format("%.3f", processor.getLowestCost()));
+		}
+	}
+
+}
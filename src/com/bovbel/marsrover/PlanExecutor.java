@@ -0,0 +1,333 @@
+package com.bovbel.marsrover;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Plan executor, fetches a chosen chunk sequence through a {@link RangeTransport} and reassembles the
+ * image into a memory mapped output file, measuring wall clock time against predicted {@link Chunk#cost()}
+ *
+ * Each chunk is fetched on its own task, on virtual threads where the JVM provides them, with a cap
+ * on the number of ranges in flight. Without virtual threads, each source gets a platform thread pool
+ * no larger than its cap, so a plan of many chunks doesn't start a thread per chunk, and a busy source
+ * doesn't hold threads that other sources could use. Overlapping chunks write identical bytes, so regions
+ * are written without coordination. Bytes past the end of the image are read and discarded.
+ *
+ * Usage: PlanExecutor problemFile outputFile [concurrency] [time scale] [verify], solves problem and fetches the
+ * solution from one {@link LoopbackRangeServer} per source, with the source latency and bandwidth scaled by time scale.
+ * Fixed costs that don't scale, such as connection setup and warm up, are measured by fetching the plan once without
+ * latency or pacing, and the measured time is scaled back both with and without them, warning when they dominate.
+ * With verify, output is checked against the synthetic image. Search threads default to the number of available
+ * processors, and can be set with -Dmarsrover.threads=n.
+ *
+ */
+public class PlanExecutor {
+
+	//largest region of output mapped at once
+	private static final long MAP_WINDOW = 1L << 30;
+
+	//thread limit for executors that may run any number of tasks at once
+	static final int UNBOUNDED = Integer.MAX_VALUE;
+
+	//fixed costs above this fraction of a measured run make its scaled estimate unreliable
+	private static final double BASELINE_WARNING_FRACTION = 0.25;
+
+	private final RangeTransport transport;
+	private final int concurrency;
+	private final ChunkCatalogue catalogue;
+
+	/**
+	 * Create executor fetching through transport from default link, with at most concurrency ranges in flight.
+	 * Plan chunks are costed once per execution, to sum their predicted cost, so they needn't be catalogued
+	 * @param transport
+	 * @param concurrency
+	 */
+	public PlanExecutor(RangeTransport transport, int concurrency){
+		this(transport, concurrency, new ChunkCatalogue(Chunk.latency, Chunk.bandwidth));
+	}
+
+	/**
+	 * Create executor fetching catalogued chunks through transport, with at most concurrency ranges in flight
+	 * overall, and no more per source than the source allows
+	 * @param transport
+	 * @param concurrency
+	 * @param catalogue
+	 */
+	public PlanExecutor(RangeTransport transport, int concurrency, ChunkCatalogue catalogue){
+		this.transport = transport;
+		this.concurrency = concurrency;
+		this.catalogue = catalogue;
+	}
+
+	/**
+	 * Fetch every chunk of plan into output file of size numBytes, blocking until complete
+	 * @param plan
+	 * @param numBytes
+	 * @param output
+	 * @return
+	 * @throws IOException if any chunk could not be fetched or written
+	 */
+	public ExecutionReport execute(List<Chunk> plan, final long numBytes, Path output) throws IOException {
+
+		double predictedCost = 0;
+		for(Chunk chunk : plan){
+			predictedCost += catalogue.cost(chunk);
+		}
+
+		final Semaphore inFlight = new Semaphore(concurrency);
+		final Semaphore[] sourceInFlight = new Semaphore[catalogue.getNumSources()];
+		ExecutorService[] executors = new ExecutorService[catalogue.getNumSources()];
+		for(int source = 0; source < sourceInFlight.length; source++){
+			int sourceConcurrency = Math.max(1, catalogue.getConcurrency(source));
+			sourceInFlight[source] = new Semaphore(sourceConcurrency);
+			executors[source] = newTaskExecutor(Math.min(concurrency, sourceConcurrency));
+		}
+		long transferred = 0;
+		long start = System.nanoTime();
+
+		try(final FileChannel file = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+
+			//size output up front, rather than growing it from concurrent mappings
+			if(numBytes > 0){
+				file.write(ByteBuffer.allocate(1), numBytes - 1);
+			}
+
+			List<Future<Long>> fetches = new ArrayList<>();
+			for(final Chunk chunk : plan){
+				fetches.add(executors[chunk.source].submit(new Callable<Long>(){
+					@Override
+					public Long call() throws Exception {
+						//take source slot before overall slot, so waiting on a busy source doesn't hold up others
+						sourceInFlight[chunk.source].acquire();
+						try{
+							inFlight.acquire();
+							try{
+								return fetch(chunk, file, numBytes);
+							}finally{
+								inFlight.release();
+							}
+						}finally{
+							sourceInFlight[chunk.source].release();
+						}
+					}
+				}));
+			}
+
+			for(Future<Long> fetch : fetches){
+				try {
+					transferred += fetch.get();
+				} catch (InterruptedException | ExecutionException e) {
+					throw new IOException("Error fetching chunk", e);
+				}
+			}
+		}finally{
+			for(ExecutorService executor : executors){
+				executor.shutdownNow();
+			}
+		}
+
+		return new ExecutionReport((System.nanoTime() - start) / 1e9, predictedCost, transferred, plan.size(), concurrency);
+	}
+
+	/**
+	 * Stream chunk from transport into mapped output regions
+	 * @param chunk
+	 * @param file
+	 * @param numBytes
+	 * @return bytes transferred
+	 * @throws IOException
+	 */
+	private long fetch(Chunk chunk, FileChannel file, long numBytes) throws IOException {
+
+		long transferred = 0;
+		try(ReadableByteChannel channel = transport.open(chunk)){
+
+			//map part of chunk that falls inside image, window by window
+			long end = Math.min(chunk.right, numBytes);
+			for(long offset = chunk.left; offset < end; offset += MAP_WINDOW){
+				MappedByteBuffer region = file.map(FileChannel.MapMode.READ_WRITE, offset, Math.min(MAP_WINDOW, end - offset));
+				transferred += readFully(channel, region);
+			}
+
+			//drain remainder past end of image
+			if(chunk.right > end){
+				ByteBuffer discard = ByteBuffer.allocate(8192);
+				long remaining = chunk.right - Math.max(end, chunk.left);
+				while(remaining > 0){
+					discard.clear();
+					discard.limit((int) Math.min(discard.capacity(), remaining));
+					remaining -= readFully(channel, discard);
+				}
+				transferred += chunk.right - Math.max(end, chunk.left);
+			}
+		}
+		return transferred;
+	}
+
+	private static int readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		int total = 0;
+		while(buffer.hasRemaining()){
+			int read = channel.read(buffer);
+			if(read < 0){
+				throw new IOException("Range ended early");
+			}
+			total += read;
+		}
+		return total;
+	}
+
+	/**
+	 * Create executor running each task on a new virtual thread if available (Java 21+), otherwise on a
+	 * platform thread pool of at most maxThreads threads
+	 * @param maxThreads platform thread limit, {@link #UNBOUNDED} for a cached pool
+	 * @return
+	 */
+	static ExecutorService newTaskExecutor(int maxThreads){
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return maxThreads == UNBOUNDED ? Executors.newCachedThreadPool() : Executors.newFixedThreadPool(maxThreads);
+		}
+	}
+
+	/**
+	 * Measured outcome of executing a plan
+	 *
+	 */
+	public static class ExecutionReport {
+
+		public final double measuredSeconds, predictedCost;
+		public final long bytesTransferred;
+		public final int chunks, concurrency;
+
+		ExecutionReport(double measuredSeconds, double predictedCost, long bytesTransferred, int chunks, int concurrency){
+			this.measuredSeconds = measuredSeconds;
+			this.predictedCost = predictedCost;
+			this.bytesTransferred = bytesTransferred;
+			this.chunks = chunks;
+			this.concurrency = concurrency;
+		}
+
+		@Override
+		public String toString(){
+			return String.format("%d chunks, %d bytes, concurrency %d: measured %.3f s, predicted %.3f",
+					chunks, bytesTransferred, concurrency, measuredSeconds, predictedCost);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		if(args.length < 2){
+			System.err.println("Usage: PlanExecutor problemFile outputFile [concurrency] [time scale] [verify]");
+			return;
+		}
+		int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		double timeScale = args.length > 3 ? Double.parseDouble(args[3]) : 1;
+		boolean verify = args.length > 4 && args[4].equals("verify");
+		if(concurrency < 1 || !(timeScale > 0)){
+			System.err.println("Concurrency must be at least 1 and time scale above 0");
+			return;
+		}
+		int threads;
+		try{
+			threads = ProblemProcessorParallel.getDefaultParallelism();
+		}catch(IllegalArgumentException e){
+			System.err.println(e.getMessage());
+			return;
+		}
+
+		ProblemDefinition problem;
+		try(FileReader reader = new FileReader(args[0])){
+			problem = ProblemDefinition.read(reader);
+		}
+		if(!problem.isValid()){
+			return;
+		}
+		problem.applyCostParameters();
+
+		ProblemProcessorParallel processor = new ProblemProcessorParallel(problem.numBytes, problem.catalogue, threads);
+		if(processor.getBestSequence() == null){
+			System.err.println("No solution to execute");
+			return;
+		}
+		List<Chunk> plan = processor.getBestSequence();
+		Path output = Paths.get(args[1]);
+
+		//connections, filling responses and warm up take the same time at any time scale, so measure them
+		//without latency or pacing first. Part of them overlaps pacing, so the scaled estimate lies between
+		//measured time with and without them
+		ExecutionReport baseline = fetchFromLoopback(plan, problem, concurrency, 0, output);
+		ExecutionReport report = fetchFromLoopback(plan, problem, concurrency, timeScale, output);
+		System.out.println(report);
+		double simulatedSeconds = Math.max(0, report.measuredSeconds - baseline.measuredSeconds);
+		System.out.println(String.format("measured %.3f at time scale %s, %.3f excluding %.3f s fixed costs, predicted %.3f",
+				report.measuredSeconds / timeScale, timeScale, simulatedSeconds / timeScale, baseline.measuredSeconds, report.predictedCost));
+		if(baseline.measuredSeconds > BASELINE_WARNING_FRACTION * report.measuredSeconds){
+			System.err.println(String.format("Fixed costs are %.0f%% of measured time, estimate is unreliable at time scale %s",
+					100 * baseline.measuredSeconds / report.measuredSeconds, timeScale));
+		}
+
+		if(verify){
+			long mismatch = LoopbackRangeServer.findMismatch(output, problem.numBytes);
+			if(mismatch < 0){
+				System.out.println("output verified");
+			}else{
+				System.err.println("Output differs from image at offset " + mismatch);
+			}
+		}
+	}
+
+	/**
+	 * Fetch plan from one {@link LoopbackRangeServer} per source, with that source's latency and bandwidth
+	 * scaled by time scale
+	 * @param plan
+	 * @param problem
+	 * @param concurrency
+	 * @param timeScale 0 to serve without latency or pacing
+	 * @param output
+	 * @return
+	 * @throws IOException
+	 */
+	private static ExecutionReport fetchFromLoopback(List<Chunk> plan, ProblemDefinition problem, int concurrency, double timeScale, Path output) throws IOException {
+
+		ChunkCatalogue catalogue = problem.catalogue;
+		final LoopbackRangeServer[] servers = new LoopbackRangeServer[catalogue.getNumSources()];
+		try{
+			for(int source = 0; source < servers.length; source++){
+				if(catalogue.hasSource(source)){
+					servers[source] = new LoopbackRangeServer(catalogue.getLatency(source) * timeScale, catalogue.getBandwidth(source) / timeScale);
+				}
+			}
+			RangeTransport transport = new RangeTransport(){
+				@Override
+				public ReadableByteChannel open(Chunk chunk) throws IOException {
+					return servers[chunk.source].getTransport().open(chunk);
+				}
+			};
+			return new PlanExecutor(transport, concurrency, catalogue).execute(plan, problem.numBytes, output);
+		}finally{
+			for(LoopbackRangeServer server : servers){
+				if(server != null){
+					server.close();
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,250 @@
+package com.bovbel.marsrover;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Problem input, as read from or written to the problem format described in {@link Solution}
+ *
+ */
+public class ProblemDefinition {
+
+	public final long numBytes, latency, bandwidth, numChunks;
+	public final Set<Chunk> chunks;
+	public final ChunkCatalogue catalogue;
+
+	/**
+	 * Create problem definition from parameters and catalogue
+	 * @param numBytes
+	 * @param numChunks number of chunks declared by input
+	 * @param catalogue
+	 */
+	public ProblemDefinition(long numBytes, long numChunks, ChunkCatalogue catalogue){
+		this.numBytes = numBytes;
+		this.latency = catalogue.getLatency(ChunkCatalogue.DEFAULT_SOURCE);
+		this.bandwidth = catalogue.getBandwidth(ChunkCatalogue.DEFAULT_SOURCE);
+		this.numChunks = numChunks;
+		this.catalogue = catalogue;
+		this.chunks = catalogue.getChunks();
+	}
+
+	/**
+	 * Create single source problem definition from parameters and chunks
+	 * @param numBytes
+	 * @param latency
+	 * @param bandwidth
+	 * @param numChunks number of chunks declared by input
+	 * @param chunks
+	 */
+	public ProblemDefinition(long numBytes, long latency, long bandwidth, long numChunks, Set<Chunk> chunks){
+		this(numBytes, numChunks, new ChunkCatalogue(latency, bandwidth, chunks));
+	}
+
+	/**
+	 * Read problem definition from input, skipping chunks that contain no information
+	 * @param source
+	 * @return
+	 * @throws IOException
+	 */
+	public static ProblemDefinition read(Reader source) throws IOException {
+		final ProblemDefinition[] problem = new ProblemDefinition[1];
+		read(source, new Listener(){
+			@Override
+			public void header(long numBytes, long numChunks, ChunkCatalogue catalogue) {
+				problem[0] = new ProblemDefinition(numBytes, numChunks, catalogue);
+			}
+			@Override
+			public void chunk(Chunk chunk) {
+			}
+		});
+		return problem[0];
+	}
+
+	/**
+	 * Read problem from input as a stream, notifying listener of header as soon as it is complete, then of
+	 * each new chunk as it is catalogued. Chunks that contain no information or repeat a catalogued chunk are skipped
+	 * @param source
+	 * @param listener
+	 * @throws IOException
+	 */
+	public static void read(Reader source, Listener listener) throws IOException {
+
+		BufferedReader input = new BufferedReader(source);
+
+		//header values: number of bytes, latency, bandwidth, number of chunks
+		long[] header = new long[4];
+		int headerValues = 0;
+		ChunkCatalogue catalogue = null;
+
+		String line;
+		while((line = input.readLine()) != null){
+			String[] tokens = line.trim().split("[,\\s]+");
+			if(tokens[0].isEmpty()){
+				continue;
+			}
+
+			//source definition, "source id latency bandwidth [concurrency]", after default link parameters
+			if(tokens[0].equals("source")){
+				if(catalogue == null || headerValues > 3 || tokens.length < 4){
+					System.err.println("Misplaced or incomplete source definition: " + line);
+					continue;
+				}
+				int concurrency = tokens.length > 4 ? Integer.parseInt(tokens[4]) : ChunkCatalogue.UNLIMITED;
+				catalogue.addSource(Integer.parseInt(tokens[1]), Long.parseLong(tokens[2]), Long.parseLong(tokens[3]), Math.max(1, concurrency));
+				continue;
+			}
+
+			int token = 0;
+			while(headerValues < header.length && token < tokens.length){
+				header[headerValues++] = Long.parseLong(tokens[token++]);
+				if(headerValues == 3){
+					catalogue = new ChunkCatalogue(header[1], header[2]);
+				}
+				if(headerValues == header.length){
+					listener.header(header[0], header[3], catalogue);
+				}
+			}
+
+			//chunk, "left,right[,source]"
+			if(token < tokens.length){
+				long left = Long.parseLong(tokens[token]);
+				long right = token + 1 < tokens.length ? Long.parseLong(tokens[token + 1]) : 0;
+				int chunkSource = token + 2 < tokens.length ? Integer.parseInt(tokens[token + 2]) : ChunkCatalogue.DEFAULT_SOURCE;
+				//check that chunk contains information
+				if(right <= left){
+					continue;
+				}
+				if(!catalogue.hasSource(chunkSource)){
+					System.err.println("Chunk from undefined source: " + line);
+					continue;
+				}
+				Chunk chunk = catalogue.add(left, right, chunkSource);
+				if(chunk != null){
+					listener.chunk(chunk);
+				}
+			}
+		}
+
+		//incomplete header, report what was read
+		if(headerValues < header.length){
+			if(catalogue == null){
+				catalogue = new ChunkCatalogue(header[1], header[2]);
+			}
+			listener.header(header[0], header[3], catalogue);
+		}
+	}
+
+	/**
+	 * Receiver of problem input as it is read
+	 *
+	 */
+	public interface Listener {
+
+		/**
+		 * Called once header and source definitions have been read, before any chunk
+		 * @param numBytes
+		 * @param numChunks number of chunks declared by input
+		 * @param catalogue catalogue that chunks will be added to
+		 */
+		public void header(long numBytes, long numChunks, ChunkCatalogue catalogue);
+
+		/**
+		 * Called for each chunk after it is added to catalogue
+		 * @param chunk
+		 */
+		public void chunk(Chunk chunk);
+
+	}
+
+	/**
+	 * Write problem definition in input format, chunks in order of left bound so that the output can be
+	 * read by {@link PipelinedSolver} without falling back to a full search
+	 * @param output
+	 */
+	public void write(PrintWriter output){
+		output.println(numBytes);
+		output.println(latency);
+		output.println(bandwidth);
+		for(int source = ChunkCatalogue.DEFAULT_SOURCE + 1; source < catalogue.getNumSources(); source++){
+			if(catalogue.hasSource(source)){
+				output.println("source " + source + " " + catalogue.getLatency(source) + " " + catalogue.getBandwidth(source)
+						+ (catalogue.getConcurrency(source) == ChunkCatalogue.UNLIMITED ? "" : " " + catalogue.getConcurrency(source)));
+			}
+		}
+		output.println(chunks.size());
+		List<Chunk> sorted = new ArrayList<>(chunks);
+		Collections.sort(sorted, Chunk.getLeftComparator());
+		for(Chunk chunk : sorted){
+			output.println(chunk.left + "," + chunk.right + (chunk.source == ChunkCatalogue.DEFAULT_SOURCE ? "" : "," + chunk.source));
+		}
+		output.flush();
+	}
+
+	/**
+	 * Check that problem is solvable in principle, printing reason if not
+	 * @return
+	 */
+	public boolean isValid(){
+
+		if(!hasValidSources()){
+			return false;
+		}
+
+		if(numChunks != chunks.size()){
+			System.err.println("Wrong number of chunks provided");
+			return false;
+		}
+
+		long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+		for(Chunk chunk : chunks){
+			min = Math.min(min, chunk.left);
+			max = Math.max(max, chunk.right);
+		}
+		if(min > 0 || max < numBytes){
+			System.err.println("min/max doesn't cover numBytes");
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Check that every source has usable link parameters, printing reason if not. Only needs the header,
+	 * so can be checked before chunks are read
+	 * @return
+	 */
+	public boolean hasValidSources(){
+
+		for(int source = 0; source < catalogue.getNumSources(); source++){
+			if(!catalogue.hasSource(source)){
+				continue;
+			}
+			if(catalogue.getBandwidth(source) <= 0){
+				System.err.println("insufficient bandwidth");
+				return false;
+			}
+
+			if(catalogue.getLatency(source) < 0){
+				System.err.println("impossible latency");
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Set global cost parameters used by {@link Chunk#cost()}, from default source
+	 */
+	public void applyCostParameters(){
+		Chunk.latency = latency;
+		Chunk.bandwidth = bandwidth;
+	}
+
+}
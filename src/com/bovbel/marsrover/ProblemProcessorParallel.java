@@ -1,5 +1,9 @@
 package com.bovbel.marsrover;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -14,31 +18,127 @@ import java.util.concurrent.RecursiveAction;
  */
 public class ProblemProcessorParallel {
 
-	private final long numBytes;
+	//number of recent index query results to memoize, and total chunk references they may hold
+	private static final int QUERY_CACHE_SIZE = 1024;
+	private static final long QUERY_CACHE_CHUNKS = 1 << 20;
 	
-	private ForkJoinPool pool = new ForkJoinPool();
-	private IntervalChunkTree intervalTree;
+	//most positions looked up by one batched index query, as each result can hold many chunks
+	private static final int MAX_BATCH_POSITIONS = 32;
+	
+	//search levels that always split their frontier, to seed the pool with work
+	private static final int SEED_DEPTH = 2;
+	
+	//deeper levels only split while fewer than this many surplus tasks are queued
+	private static final int SURPLUS_THRESHOLD = 3;
+	
+	//frontier windows created per pool thread when splitting
+	private static final int WINDOWS_PER_THREAD = 4;
+	
+	//smallest window is this fraction of image, remaining ranges below two windows are explored inline
+	private static final long MAX_WINDOWS = 4096;
+
+	//system property overriding number of search threads of processors that create their own pool
+	static final String THREADS_PROPERTY = "marsrover.threads";
+
+	private final long numBytes, minWindowBytes;
+	
+	private final ForkJoinPool pool;
+	private ChunkIndex intervalTree;
+	private final ChunkCatalogue catalogue;
+	private ChunkQueryCache queryCache = new ChunkQueryCache(QUERY_CACHE_SIZE, QUERY_CACHE_CHUNKS);
 	private BranchCostRecord branchCostRecord = new BranchCostRecord();
 	private List<Chunk> bestSequence;
 	
 	/**
-	 * Initialize problem by creating interval tree, and beginning search at 0 position
+	 * Initialize problem by cataloguing chunks offered by default link and creating interval tree, and beginning
+	 * search at 0 position
 	 * @param numBytes
 	 * @param chunks
 	 */
 	public ProblemProcessorParallel(long numBytes, Set<Chunk> chunks){
+		this(numBytes, chunks, getDefaultParallelism());
+	}
+	
+	/**
+	 * Initialize problem by cataloguing chunks offered by default link and creating interval tree, and beginning
+	 * search at 0 position with a given number of search threads
+	 * @param numBytes
+	 * @param chunks
+	 * @param parallelism
+	 */
+	public ProblemProcessorParallel(long numBytes, Set<Chunk> chunks, int parallelism){
+		this(numBytes, new ChunkCatalogue(Chunk.latency, Chunk.bandwidth, chunks), parallelism);
+	}
+	
+	/**
+	 * Initialize multi source problem, indexing cheapest source for each chunk, and begin search at 0 position
+	 * @param numBytes
+	 * @param catalogue
+	 */
+	public ProblemProcessorParallel(long numBytes, ChunkCatalogue catalogue){
+		this(numBytes, catalogue, getDefaultParallelism());
+	}
+	
+	/**
+	 * Initialize multi source problem, indexing cheapest source for each chunk, and begin search at 0 position
+	 * with a given number of search threads, on a pool that is shut down once search ends
+	 * @param numBytes
+	 * @param catalogue
+	 * @param parallelism
+	 */
+	public ProblemProcessorParallel(long numBytes, ChunkCatalogue catalogue, int parallelism){
+		this(numBytes, new IntervalChunkTree(catalogue.getCheapestChunks(), parallelism), catalogue, new ForkJoinPool(parallelism), true);
+	}
+	
+	/**
+	 * Initialize problem with a prebuilt index of catalogued chunks, and begin search at 0 position using the
+	 * provided pool. Pool is shut down if search finds a gap that can't be filled, otherwise left to the caller
+	 * @param numBytes
+	 * @param index
+	 * @param catalogue
+	 * @param pool
+	 */
+	public ProblemProcessorParallel(long numBytes, ChunkIndex index, ChunkCatalogue catalogue, ForkJoinPool pool){
+		this(numBytes, index, catalogue, pool, false);
+	}
+	
+	private ProblemProcessorParallel(long numBytes, ChunkIndex index, ChunkCatalogue catalogue, ForkJoinPool pool, boolean ownsPool){
 
 		this.numBytes = numBytes;		
-		intervalTree = new IntervalChunkTree(chunks);
+		this.pool = pool;
+		this.catalogue = catalogue;
+		intervalTree = index;
+		
+		minWindowBytes = Math.max(1, numBytes / MAX_WINDOWS);
 		
 		try{
-			pool.invoke(new ProblemBranch(0, 0 , new LinkedList<Chunk>()));
+			List<ProblemBranch> root = new ArrayList<>();
+			root.add(new ProblemBranch(0, 0 , new LinkedList<Chunk>(), null));
+			pool.invoke(new FrontierTask(root, 0));
 		}catch(CancellationException ex){
 			System.err.println("Cancelled");
+		}finally{
+			if(ownsPool){
+				pool.shutdown();
+			}
 		}
 		
 	}
 	
+	/**
+	 * Get number of search threads for processors that create their own pool, from the marsrover.threads system
+	 * property if set, otherwise the number of available processors
+	 * @return
+	 * @throws IllegalArgumentException if property is set to less than 1
+	 */
+	public static int getDefaultParallelism(){
+		int parallelism = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+		if(parallelism < 1){
+			throw new IllegalArgumentException(THREADS_PROPERTY + " must be at least 1, was " + parallelism);
+		}
+		return parallelism;
+	}
+	
 	/**
 	 * Retrieve chunk sequence of best solution, null if no solution
 	 * @return
@@ -60,65 +160,244 @@ public class ProblemProcessorParallel {
 	 * @author Pavel
 	 *
 	 */
-	@SuppressWarnings("serial")
-	private class ProblemBranch extends RecursiveAction{
+	private class ProblemBranch {
 
 		final long currentByte;
 		final double currentCost;
 		final List<Chunk> currentChunks;
+		List<Chunk> potentialChunks;
 		
 		/**
 		 * Load in current problem branch progress
 		 * @param currentByte byte index of this solution branch so far
 		 * @param currentCost transmission cost of this solution branch so far
 		 * @param currentChunks list of chunks downloaded in this solution so far
+		 * @param potentialChunks chunks containing current byte index if already queried, otherwise null
 		 */
-		public ProblemBranch(long currentByte, double currentCost, List<Chunk> currentChunks){
+		public ProblemBranch(long currentByte, double currentCost, List<Chunk> currentChunks, List<Chunk> potentialChunks){
 			this.currentByte = currentByte;
 			this.currentCost = currentCost;
 			this.currentChunks = currentChunks;
+			this.potentialChunks = potentialChunks;
 		}
 		
-		@Override
-		protected void compute() {
+		/**
+		 * Add viable branches extending this one by each chunk containing the current byte index
+		 * @param newBranches
+		 * @return false if no chunks fill gap at current byte index, and search should stop
+		 */
+		boolean expand(List<ProblemBranch> newBranches) {
 			
-			//Query interval tree for all chunks that contain the current byte index			
-			List<Chunk> potentialChunks = intervalTree.getChunksContainingValue(currentByte);
+			//skip branch if a cheaper one has reached as far since it was created
+			if(!branchCostRecord.isViable(currentByte, currentCost)){
+				potentialChunks = null;
+				return true;
+			}
+			
+			//Query interval tree for all chunks that contain the current byte index, unless already batched
+			if(potentialChunks == null){
+				potentialChunks = queryCache.get(currentByte);
+			}
+			if(potentialChunks == null){
+				List<Chunk> queried = intervalTree.getChunksContainingValue(currentByte);
+				if(queried != null){
+					potentialChunks = queryCache.put(currentByte, queried);
+				}
+			}
 			
 			//Check if query returns non empty list
-			if(potentialChunks != null && !potentialChunks.isEmpty()){
+			if(potentialChunks == null || potentialChunks.isEmpty()){
+				//no chunks found to fill gap, so stop searching
+				System.err.println("No chunks available to fill gap at " + currentByte);
+				return false;
+			}
 				
-				//Start building list of potential new search branches
-				List<ProblemBranch> newBranches = new LinkedList<>();
+			//Iterate over all chunks returned from interval tree query, releasing them afterwards since
+			//on dense input each list can hold a large fraction of all chunks
+			List<Chunk> candidates = potentialChunks;
+			potentialChunks = null;
+			for (Chunk next : candidates){					
+				double newBranchCost = currentCost + catalogue.cost(next);					
 				
-				//Iterate over all chunks returned from interval tree query
-				for (Chunk next : potentialChunks){					
-					double newBranchCost = currentCost + next.cost();					
+				//check if this chunk solves problem, and if it's currently the best solution
+				if(next.right >= numBytes && branchCostRecord.addIfViable(numBytes, newBranchCost)){
+					//record chunk as solution
+					bestSequence = new LinkedList<>(currentChunks);
+					bestSequence.add(next);
 					
-					//check if this chunk solves problem, and if it's currently the best solution
-					if(next.right >= numBytes && branchCostRecord.addIfViable(numBytes, newBranchCost)){
-						//record chunk as solution
-						bestSequence = new LinkedList<>(currentChunks);
-						bestSequence.add(next);
-						
-					//check records if this adding this chunk to the search sequence creates a viable  
-					//path for continued searching (smallest cost recorded for chunk's right boundary)
-					}else if(branchCostRecord.addIfViable(next.right, newBranchCost)){
-						List<Chunk> newBranchChunks = new LinkedList<>(currentChunks);
-						newBranchChunks.add(next);
-						newBranches.add(new ProblemBranch(next.right, newBranchCost, newBranchChunks));
-					}															
+				//check records if this adding this chunk to the search sequence creates a viable  
+				//path for continued searching (smallest cost recorded for chunk's right boundary)
+				}else if(next.right < numBytes && branchCostRecord.addIfViable(next.right, newBranchCost)){
+					List<Chunk> newBranchChunks = new LinkedList<>(currentChunks);
+					newBranchChunks.add(next);
+					newBranches.add(new ProblemBranch(next.right, newBranchCost, newBranchChunks, null));
+				}															
+			}
+			return true;
+		}
+		
+	}
+	
+	/**
+	 * Inner class exploring a frontier of branches whose positions fall in one byte range window. The
+	 * frontier is expanded one level at a time, in slices of at most MAX_BATCH_POSITIONS branches with a
+	 * batched index query per slice, so that only one slice of candidate lists is held at once. After each
+	 * level the task decides whether to keep exploring inline or to split the new frontier into windows
+	 * and fork them
+	 *
+	 */
+	@SuppressWarnings("serial")
+	private class FrontierTask extends RecursiveAction {
+		
+		List<ProblemBranch> frontier;
+		int depth;
+		
+		/**
+		 * Create task for frontier
+		 * @param frontier branches sorted by position
+		 * @param depth number of chunks in frontier branches
+		 */
+		FrontierTask(List<ProblemBranch> frontier, int depth){
+			this.frontier = frontier;
+			this.depth = depth;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			while(!frontier.isEmpty()){
+				
+				//Look up chunks for each slice of frontier positions in one batched query, and expand it
+				List<ProblemBranch> newBranches = new ArrayList<>();
+				for(int from = 0; from < frontier.size(); from += MAX_BATCH_POSITIONS){
+					//stop if search was abandoned, by a gap found elsewhere or by the owner of the pool
+					if(pool.isShutdown()){
+						return;
+					}
+					List<ProblemBranch> slice = frontier.subList(from, Math.min(from + MAX_BATCH_POSITIONS, frontier.size()));
+					prefetchPotentialChunks(slice);
+					for(ProblemBranch branch : slice){
+						if(!branch.expand(newBranches)){
+							pool.shutdownNow();
+							return;
+						}
+					}
 				}
-				//Pass all viable new branches off for processing
-				invokeAll(newBranches);
-			}else{
-				//no chunks found to fill gap, so stop searching
-				System.err.println("No chunks available to fill gap at " + currentByte);
-				pool.shutdownNow();
+				Collections.sort(newBranches, BRANCH_POSITION_COMPARATOR);
+				frontier = newBranches;
+				depth++;
+				
+				if(shouldSplit()){
+					invokeAll(split());
+					return;
+				}
+			}
+		}
+		
+		/**
+		 * Decide whether to fork frontier: always near the root to seed the pool, otherwise only while the
+		 * pool is short of queued work and enough of the image remains to split
+		 * @return
+		 */
+		private boolean shouldSplit(){
+			if(frontier.size() < 2){
+				return false;
+			}
+			long remaining = numBytes - frontier.get(0).currentByte;
+			if(remaining < 2 * minWindowBytes){
+				return false;
+			}
+			return depth < SEED_DEPTH || getSurplusQueuedTaskCount() < SURPLUS_THRESHOLD;
+		}
+		
+		/**
+		 * Split sorted frontier into tasks covering consecutive byte range windows of the remaining image, 
+		 * falling back to halves if the whole frontier falls in one window
+		 * @return
+		 */
+		private List<FrontierTask> split(){
+			long start = frontier.get(0).currentByte;
+			long windowBytes = Math.max(minWindowBytes, (numBytes - start) / (pool.getParallelism() * WINDOWS_PER_THREAD));
+			
+			List<FrontierTask> tasks = new ArrayList<>();
+			int from = 0;
+			for(int i = 1; i <= frontier.size(); i++){
+				if(i == frontier.size() || (frontier.get(i).currentByte - start) / windowBytes != (frontier.get(from).currentByte - start) / windowBytes){
+					tasks.add(new FrontierTask(new ArrayList<>(frontier.subList(from, i)), depth));
+					from = i;
+				}
+			}
+			if(tasks.size() == 1){
+				int mid = frontier.size() / 2;
+				tasks.clear();
+				tasks.add(new FrontierTask(new ArrayList<>(frontier.subList(0, mid)), depth));
+				tasks.add(new FrontierTask(new ArrayList<>(frontier.subList(mid, frontier.size())), depth));
+			}
+			return tasks;
+		}
+		
+	}
+	
+	/**
+	 * Fill in potential chunks for branches, from memoized results where possible and otherwise
+	 * with a single batched index query over their sorted, distinct positions. At most
+	 * MAX_BATCH_POSITIONS positions are queried, remaining branches are left to query on expansion
+	 * @param branches
+	 */
+	private void prefetchPotentialChunks(List<ProblemBranch> branches){
+		
+		//collect positions not yet memoized
+		long[] positions = new long[branches.size()];
+		int numPositions = 0;
+		for(ProblemBranch branch : branches){
+			if(branch.potentialChunks == null){
+				branch.potentialChunks = queryCache.get(branch.currentByte);
+			}
+			if(branch.potentialChunks == null){
+				positions[numPositions++] = branch.currentByte;
+			}
+		}
+		if(numPositions == 0){
+			return;
+		}
+		
+		//sort and remove duplicates, as required by batch query
+		Arrays.sort(positions, 0, numPositions);
+		int distinct = 0;
+		for(int i = 0; i < numPositions; i++){
+			if(distinct == 0 || positions[i] != positions[distinct - 1]){
+				positions[distinct++] = positions[i];
 			}
-							
 		}
+		positions = Arrays.copyOf(positions, Math.min(distinct, MAX_BATCH_POSITIONS));
 		
+		List<List<Chunk>> results = intervalTree.getChunksContainingValues(positions);
+		if(results == null){
+			return;
+		}
+		for(int i = 0; i < positions.length; i++){
+			results.set(i, queryCache.put(positions[i], results.get(i)));
+		}
+		
+		//hand shared results to branches that were not memoized
+		for(ProblemBranch branch : branches){
+			if(branch.potentialChunks == null){
+				int position = Arrays.binarySearch(positions, branch.currentByte);
+				if(position >= 0){
+					branch.potentialChunks = results.get(position);
+				}
+			}
+		}
 	}
 	
+	/**
+	 * Compare branches by position
+	 */
+	private static final Comparator<ProblemBranch> BRANCH_POSITION_COMPARATOR = new Comparator<ProblemBranch>(){
+		@Override
+		public int compare(ProblemBranch a, ProblemBranch b) {
+			return Long.compare(a.currentByte, b.currentByte);
+		}
+	};
+	
 }
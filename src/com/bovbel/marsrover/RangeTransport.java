@@ -0,0 +1,23 @@
+package com.bovbel.marsrover;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Transport for fetching byte ranges of the image, used by {@link PlanExecutor}
+ *
+ * Implementations must be safe to call from multiple threads
+ *
+ */
+public interface RangeTransport {
+
+	/**
+	 * Request chunk, returning channel that streams exactly chunk.size() bytes starting at chunk.left.
+	 * Caller closes channel
+	 * @param chunk
+	 * @return
+	 * @throws IOException
+	 */
+	public ReadableByteChannel open(Chunk chunk) throws IOException;
+
+}
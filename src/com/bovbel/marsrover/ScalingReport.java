@@ -0,0 +1,324 @@
+package com.bovbel.marsrover;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling report runner, sweeps generated problems over chunk count, index type and search thread count
+ * and records index build time, search time, allocation and peak heap of {@link ProblemProcessorParallel}
+ *
+ * Allocation is summed over all live threads, and so only approximate if other threads are busy.
+ *
+ * Every index type solves the same problem, so their costs must agree. An index that misses chunks can
+ * only make the search worse, so rows costing more than the cheapest row of their problem, or finding no
+ * solution where another row did, are marked as mismatched in the report and on standard error.
+ *
+ * Usage: ScalingReport [key=value ...], with keys
+ * distributions - comma separated {@link WorkloadGenerator.Distribution} names, default all
+ * chunks - comma separated chunk counts, default 1000,2000,4000,8000
+ * threads - comma separated search thread counts, default 1,2,4 up to available processors
+ * indexes - comma separated {@link IndexType} names, default tree,blocked
+ * bytes, latency, bandwidth, seed - problem parameters, default 4294967296, 15, 10, 0
+ * csv, markdown - report output files, markdown is printed to standard output if neither is given
+ *
+ */
+public class ScalingReport {
+
+	private static final double MEGABYTE = 1024 * 1024;
+
+	/**
+	 * Chunk index implementations to measure
+	 */
+	public enum IndexType {
+		//centered interval tree
+		TREE,
+		//blocked, SIMD tested index
+		BLOCKED;
+
+		ChunkIndex build(Set<Chunk> chunks){
+			switch(this){
+			case BLOCKED:
+				return new BlockedChunkIndex(chunks);
+			default:
+				return new IntervalChunkTree(chunks);
+			}
+		}
+	}
+
+	/**
+	 * Single measurement
+	 */
+	private static class Row {
+		String distribution, index;
+		int chunks, threads;
+		double buildMillis, solveMillis, allocatedMegabytes, peakHeapMegabytes;
+		Double cost;
+		boolean costMismatch;
+	}
+
+	//relative tolerance for costs summed in different order
+	private static final double COST_TOLERANCE = 1e-9;
+
+	private final List<Row> rows = new ArrayList<>();
+
+	/**
+	 * Solve problem once per thread count with an index of given type, recording a row for each
+	 * @param distribution
+	 * @param problem
+	 * @param indexType
+	 * @param threadCounts
+	 */
+	public void measure(WorkloadGenerator.Distribution distribution, ProblemDefinition problem, IndexType indexType, int[] threadCounts){
+
+		problem.applyCostParameters();
+		for(int threads : threadCounts){
+
+			System.gc();
+			resetPeakHeap();
+			Map<Long, Long> allocatedBefore = allocatedBytesByThread();
+			long start = System.nanoTime();
+
+			ChunkIndex index = indexType.build(problem.catalogue.getCheapestChunks());
+			long built = System.nanoTime();
+
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			ProblemProcessorParallel processor = new ProblemProcessorParallel(problem.numBytes, index, problem.catalogue, pool);
+			long solved = System.nanoTime();
+
+			//sample allocation before shutting down pool, while its workers are still alive
+			Map<Long, Long> allocatedAfter = allocatedBytesByThread();
+			pool.shutdown();
+			try {
+				pool.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				System.err.println("Interrupted waiting for pool shutdown");
+			}
+
+			Row row = new Row();
+			row.distribution = distribution.name().toLowerCase();
+			row.index = indexType.name().toLowerCase();
+			row.chunks = problem.chunks.size();
+			row.threads = threads;
+			row.buildMillis = (built - start) / 1e6;
+			row.solveMillis = (solved - built) / 1e6;
+			row.allocatedMegabytes = allocatedDifference(allocatedBefore, allocatedAfter) / MEGABYTE;
+			row.peakHeapMegabytes = peakHeap() / MEGABYTE;
+			row.cost = processor.getLowestCost();
+			rows.add(row);
+
+			System.err.println(String.format("%s %d chunks, %s index, %d threads: %.1f ms", row.distribution, row.chunks, row.index, threads, row.buildMillis + row.solveMillis));
+		}
+	}
+
+	/**
+	 * Mark rows whose cost disagrees with the cheapest row measured for the same problem
+	 * @return number of mismatched rows
+	 */
+	public int markCostMismatches(){
+		Map<String, Double> lowest = new HashMap<>();
+		for(Row row : rows){
+			String problem = row.distribution + "/" + row.chunks;
+			if(row.cost != null && (!lowest.containsKey(problem) || row.cost < lowest.get(problem))){
+				lowest.put(problem, row.cost);
+			}
+		}
+		int mismatches = 0;
+		for(Row row : rows){
+			Double expected = lowest.get(row.distribution + "/" + row.chunks);
+			row.costMismatch = expected != null && (row.cost == null || row.cost - expected > COST_TOLERANCE * Math.abs(expected));
+			if(row.costMismatch){
+				mismatches++;
+				System.err.println(String.format("Cost mismatch: %s %d chunks, %s index, %d threads: %s, expected %.3f", row.distribution, row.chunks,
+						row.index, row.threads, formatCost(row.cost), expected));
+			}
+		}
+		return mismatches;
+	}
+
+	/**
+	 * Write report rows as CSV
+	 * @param output
+	 */
+	public void writeCsv(PrintWriter output){
+		output.println("distribution,chunks,index,threads,build_ms,solve_ms,allocated_mb,peak_heap_mb,cost,cost_mismatch");
+		for(Row row : rows){
+			output.println(String.format("%s,%d,%s,%d,%.3f,%.3f,%.3f,%.3f,%s,%b", row.distribution, row.chunks, row.index, row.threads,
+					row.buildMillis, row.solveMillis, row.allocatedMegabytes, row.peakHeapMegabytes, formatCost(row.cost), row.costMismatch));
+		}
+		output.flush();
+	}
+
+	/**
+	 * Write report rows as markdown table
+	 * @param output
+	 */
+	public void writeMarkdown(PrintWriter output){
+		output.println("| distribution | chunks | index | threads | build (ms) | solve (ms) | allocated (MB) | peak heap (MB) | cost | cost mismatch |");
+		output.println("|---|---:|---|---:|---:|---:|---:|---:|---:|---|");
+		for(Row row : rows){
+			output.println(String.format("| %s | %d | %s | %d | %.1f | %.1f | %.1f | %.1f | %s | %s |", row.distribution, row.chunks, row.index, row.threads,
+					row.buildMillis, row.solveMillis, row.allocatedMegabytes, row.peakHeapMegabytes, formatCost(row.cost), row.costMismatch ? "**yes**" : ""));
+		}
+		output.flush();
+	}
+
+	private static String formatCost(Double cost){
+		return cost == null ? "" : String.format("%.3f", cost);
+	}
+
+	/**
+	 * Snapshot bytes allocated so far by each live thread, empty if not supported by JVM
+	 * @return
+	 */
+	private static Map<Long, Long> allocatedBytesByThread(){
+		Map<Long, Long> output = new HashMap<>();
+		if(!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)){
+			return output;
+		}
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long[] ids = threadBean.getAllThreadIds();
+		long[] allocated = threadBean.getThreadAllocatedBytes(ids);
+		for(int i = 0; i < ids.length; i++){
+			if(allocated[i] >= 0){
+				output.put(ids[i], allocated[i]);
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * Sum bytes allocated by each thread between snapshots, threads started in between count from zero
+	 * @param before
+	 * @param after
+	 * @return
+	 */
+	private static long allocatedDifference(Map<Long, Long> before, Map<Long, Long> after){
+		long total = 0;
+		for(Map.Entry<Long, Long> entry : after.entrySet()){
+			Long previous = before.get(entry.getKey());
+			total += entry.getValue() - (previous == null ? 0 : previous);
+		}
+		return total;
+	}
+
+	private static void resetPeakHeap(){
+		for(MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()){
+			if(memoryPool.getType() == MemoryType.HEAP){
+				memoryPool.resetPeakUsage();
+			}
+		}
+	}
+
+	private static long peakHeap(){
+		long total = 0;
+		for(MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()){
+			if(memoryPool.getType() == MemoryType.HEAP){
+				total += memoryPool.getPeakUsage().getUsed();
+			}
+		}
+		return total;
+	}
+
+	private static int[] parseInts(String list){
+		String[] parts = list.split(",");
+		int[] output = new int[parts.length];
+		for(int i = 0; i < parts.length; i++){
+			output[i] = Integer.parseInt(parts[i].trim());
+		}
+		return output;
+	}
+
+	public static void main(String[] args) {
+
+		//defaults, overridden by key=value arguments
+		Map<String, String> options = new HashMap<>();
+		options.put("distributions", "");
+		options.put("chunks", "1000,2000,4000,8000");
+		StringBuilder threads = new StringBuilder("1");
+		for(int count = 2; count <= Runtime.getRuntime().availableProcessors(); count *= 2){
+			threads.append(",").append(count);
+		}
+		options.put("threads", threads.toString());
+		options.put("indexes", "tree,blocked");
+		options.put("bytes", "4294967296");
+		options.put("latency", "15");
+		options.put("bandwidth", "10");
+		options.put("seed", "0");
+		options.put("csv", "");
+		options.put("markdown", "");
+		for(String arg : args){
+			int split = arg.indexOf('=');
+			if(split < 0 || !options.containsKey(arg.substring(0, split))){
+				System.err.println("Unknown argument " + arg);
+				return;
+			}
+			options.put(arg.substring(0, split), arg.substring(split + 1));
+		}
+
+		List<WorkloadGenerator.Distribution> distributions = new ArrayList<>();
+		if(options.get("distributions").isEmpty()){
+			for(WorkloadGenerator.Distribution distribution : WorkloadGenerator.Distribution.values()){
+				distributions.add(distribution);
+			}
+		}else{
+			for(String name : options.get("distributions").split(",")){
+				distributions.add(WorkloadGenerator.Distribution.valueOf(name.trim().toUpperCase()));
+			}
+		}
+		List<IndexType> indexTypes = new ArrayList<>();
+		for(String name : options.get("indexes").split(",")){
+			indexTypes.add(IndexType.valueOf(name.trim().toUpperCase()));
+		}
+		int[] chunkCounts = parseInts(options.get("chunks"));
+		int[] threadCounts = parseInts(options.get("threads"));
+		long numBytes = Long.parseLong(options.get("bytes"));
+		long latency = Long.parseLong(options.get("latency"));
+		long bandwidth = Long.parseLong(options.get("bandwidth"));
+		long seed = Long.parseLong(options.get("seed"));
+
+		ScalingReport report = new ScalingReport();
+		for(WorkloadGenerator.Distribution distribution : distributions){
+			for(int numChunks : chunkCounts){
+				ProblemDefinition problem = new WorkloadGenerator(seed).generate(distribution, numBytes, numChunks, latency, bandwidth);
+				for(IndexType indexType : indexTypes){
+					report.measure(distribution, problem, indexType, threadCounts);
+				}
+			}
+		}
+		int mismatches = report.markCostMismatches();
+		if(mismatches > 0){
+			System.err.println(mismatches + " rows disagree with the cheapest cost found for their problem");
+		}
+
+		String csv = options.get("csv"), markdown = options.get("markdown");
+		try{
+			if(!csv.isEmpty()){
+				try(PrintWriter output = new PrintWriter(new FileWriter(csv))){
+					report.writeCsv(output);
+				}
+			}
+			if(!markdown.isEmpty()){
+				try(PrintWriter output = new PrintWriter(new FileWriter(markdown))){
+					report.writeMarkdown(output);
+				}
+			}
+		}catch(IOException e){
+			System.err.println("Error writing report");
+		}
+		if(csv.isEmpty() && markdown.isEmpty()){
+			report.writeMarkdown(new PrintWriter(System.out));
+		}
+	}
+
+}
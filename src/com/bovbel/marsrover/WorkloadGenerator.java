@@ -0,0 +1,214 @@
+package com.bovbel.marsrover;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Synthetic problem generator, for reproducing chunk distributions that stress the solver
+ *
+ * Every generated problem is solvable: a short backbone of chunks tiles the whole image, and the
+ * remaining chunks are drawn from the selected distribution. Each backbone tile reaches a margin into
+ * its neighbours but not past them, so every tile is needed to cover the image, no subset of tiles covers
+ * it without overlap, and the backbone is not the cheapest solution whenever the distribution offers a
+ * tighter cover.
+ *
+ * Usage: WorkloadGenerator distribution numBytes numChunks latency bandwidth [seed] [output file]
+ *
+ */
+public class WorkloadGenerator {
+
+	/**
+	 * Chunk distributions
+	 */
+	public enum Distribution {
+		//uniformly placed bounds
+		UNIFORM,
+		//Pareto distributed sizes, mostly small chunks with a few huge ones
+		HEAVY_TAILED,
+		//groups of chunks nested around a common center
+		NESTED,
+		//clusters of chunks whose bounds differ by a few bytes
+		NEAR_DUPLICATE,
+		//long runs of tiny, contiguous chunks
+		TINY_CHAINS,
+		//overlapping ladder with shared left and distinct right bounds, so cost rises with every
+		//position reached and few branch cost records dominate one another
+		ADVERSARIAL
+	}
+
+	//number of backbone chunks tiling the image
+	private static final int BACKBONE_CHUNKS = 8;
+
+	//backbone tiles reach 1/BACKBONE_MARGIN of a tile into each neighbour
+	private static final int BACKBONE_MARGIN = 4;
+
+	//Pareto shape for heavy tailed sizes, lower is heavier
+	private static final double PARETO_ALPHA = 1.2;
+
+	//chunks per nested group, near duplicate cluster and ladder rung
+	private static final int GROUP_SIZE = 32;
+
+	private final Random random;
+
+	/**
+	 * Create generator with fixed seed, for reproducible problems
+	 * @param seed
+	 */
+	public WorkloadGenerator(long seed){
+		random = new Random(seed);
+	}
+
+	/**
+	 * Generate problem with chunks drawn from distribution
+	 * @param distribution
+	 * @param numBytes
+	 * @param numChunks total number of chunks, including backbone
+	 * @param latency
+	 * @param bandwidth
+	 * @return
+	 */
+	public ProblemDefinition generate(Distribution distribution, long numBytes, int numChunks, long latency, long bandwidth){
+
+		Set<Chunk> chunks = new HashSet<>();
+
+		//tile image with overlapping backbone so that a solution always exists, without being an easy optimum
+		int backbone = Math.max(1, Math.min(BACKBONE_CHUNKS, numChunks));
+		long margin = numBytes / (backbone * BACKBONE_MARGIN);
+		for(int i = 0; i < backbone; i++){
+			add(chunks, numBytes * i / backbone - margin, numBytes * (i + 1) / backbone + margin, numBytes);
+		}
+
+		//fill remainder from distribution, giving up if it keeps producing duplicates
+		long attempts = 10L * numChunks;
+		while(chunks.size() < numChunks && attempts-- > 0){
+			switch(distribution){
+			case UNIFORM:
+				addUniform(chunks, numBytes);
+				break;
+			case HEAVY_TAILED:
+				addHeavyTailed(chunks, numBytes, numChunks);
+				break;
+			case NESTED:
+				addNested(chunks, numBytes, numChunks);
+				break;
+			case NEAR_DUPLICATE:
+				addNearDuplicates(chunks, numBytes, numChunks);
+				break;
+			case TINY_CHAINS:
+				addTinyChain(chunks, numBytes, numChunks);
+				break;
+			case ADVERSARIAL:
+				addLadderRung(chunks, numBytes, numChunks);
+				break;
+			}
+		}
+
+		return new ProblemDefinition(numBytes, latency, bandwidth, chunks.size(), chunks);
+	}
+
+	private void addUniform(Set<Chunk> chunks, long numBytes){
+		long a = nextLong(numBytes + 1), b = nextLong(numBytes + 1);
+		add(chunks, Math.min(a, b), Math.max(a, b), numBytes);
+	}
+
+	private void addHeavyTailed(Set<Chunk> chunks, long numBytes, int numChunks){
+		//smallest size scales with chunk count, so that chunks cover image several times over in total
+		double minSize = Math.max(1, numBytes / (double) numChunks);
+		long size = (long) Math.min(numBytes, minSize / Math.pow(1 - random.nextDouble(), 1 / PARETO_ALPHA));
+		long left = nextLong(numBytes - size + 1);
+		add(chunks, left, left + size, numBytes);
+	}
+
+	private void addNested(Set<Chunk> chunks, long numBytes, int numChunks){
+		long center = nextLong(numBytes);
+		double halfWidth = numBytes * random.nextDouble() / 2;
+		for(int i = 0; i < GROUP_SIZE && halfWidth >= 1 && chunks.size() < numChunks; i++){
+			add(chunks, center - (long) halfWidth, center + (long) halfWidth, numBytes);
+			halfWidth *= 0.5 + 0.4 * random.nextDouble();
+		}
+	}
+
+	private void addNearDuplicates(Set<Chunk> chunks, long numBytes, int numChunks){
+		long size = 1 + nextLong(Math.max(1, numBytes / 10));
+		long left = nextLong(numBytes - size + 1);
+		long jitter = Math.max(2, numBytes / 100000);
+		for(int i = 0; i < GROUP_SIZE && chunks.size() < numChunks; i++){
+			add(chunks, left + nextLong(jitter) - jitter / 2, left + size + nextLong(jitter) - jitter / 2, numBytes);
+		}
+	}
+
+	private void addTinyChain(Set<Chunk> chunks, long numBytes, int numChunks){
+		long maxSize = Math.max(1, numBytes / (4L * numChunks));
+		long left = nextLong(numBytes);
+		while(left < numBytes && chunks.size() < numChunks){
+			long right = left + 1 + nextLong(maxSize);
+			add(chunks, left, right, numBytes);
+			//chain links either abut or overlap by a byte
+			left = random.nextBoolean() ? right : right - 1;
+		}
+	}
+
+	private void addLadderRung(Set<Chunk> chunks, long numBytes, int numChunks){
+		long step = Math.max(1, numBytes * GROUP_SIZE / numChunks);
+		long left = nextLong(numBytes / step + 1) * step;
+		for(int i = 1; i <= GROUP_SIZE && chunks.size() < numChunks; i++){
+			add(chunks, left, left + i * step + nextLong(step), numBytes);
+		}
+	}
+
+	/**
+	 * Add chunk clamped to image, if it contains information
+	 * @param chunks
+	 * @param left
+	 * @param right
+	 * @param numBytes
+	 */
+	private static void add(Set<Chunk> chunks, long left, long right, long numBytes){
+		left = Math.max(0, left);
+		right = Math.min(numBytes, right);
+		if(right > left){
+			chunks.add(new Chunk(left, right));
+		}
+	}
+
+	/**
+	 * Uniform random long in [0, bound)
+	 * @param bound
+	 * @return
+	 */
+	private long nextLong(long bound){
+		if(bound <= 1){
+			return 0;
+		}
+		return (long) (random.nextDouble() * bound);
+	}
+
+	public static void main(String[] args) {
+
+		if(args.length < 5){
+			System.err.println("Usage: WorkloadGenerator distribution numBytes numChunks latency bandwidth [seed] [output file]");
+			return;
+		}
+
+		Distribution distribution = Distribution.valueOf(args[0].toUpperCase());
+		long numBytes = Long.parseLong(args[1]);
+		int numChunks = Integer.parseInt(args[2]);
+		long latency = Long.parseLong(args[3]);
+		long bandwidth = Long.parseLong(args[4]);
+		long seed = args.length > 5 ? Long.parseLong(args[5]) : 0;
+
+		ProblemDefinition problem = new WorkloadGenerator(seed).generate(distribution, numBytes, numChunks, latency, bandwidth);
+
+		try(PrintWriter output = args.length > 6 ? new PrintWriter(new FileWriter(args[6])) : new PrintWriter(new OutputStreamWriter(System.out))){
+			problem.write(output);
+		}catch(IOException e){
+			System.err.println("Error writing problem file " + args[6]);
+		}
+	}
+
+}